@@ -0,0 +1,90 @@
+package com.ekkongames.jdacbl.commands;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares finding the commands for a name through the index against the linear scan
+ * CommandGroup used to dispatch with, as the number of commands grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandDispatchBenchmark {
+
+    private static final class NoOpCommand extends Command {
+        NoOpCommand(String... names) {
+            super(new CommandInfo.Builder().names(names).build());
+        }
+
+        @Override
+        public void exec(CommandInput input) {
+        }
+    }
+
+    @Param({"10", "100", "1000", "10000"})
+    public int commandCount;
+
+    private Command[] commands;
+    private CommandTree.Node root;
+    private String[] tokens;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        commands = new Command[commandCount];
+        CommandGroup.Builder builder = new CommandGroup.Builder().disableHelp().setSilent(true);
+        for (int i = 0; i < commandCount; i++) {
+            // every command has its own name, and some have an alias
+            commands[i] = random.nextInt(4) == 0
+                    ? new NoOpCommand("c" + i, "a" + i)
+                    : new NoOpCommand("c" + i);
+            builder.add(commands[i]);
+        }
+        root = builder.build().getCommandTree().getRoot();
+
+        tokens = new String[1024];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = "c" + random.nextInt(commandCount);
+        }
+    }
+
+    private String nextToken() {
+        return tokens[next++ & (tokens.length - 1)];
+    }
+
+    @Benchmark
+    public Object index() {
+        return root.lookup(nextToken());
+    }
+
+    @Benchmark
+    public void linearScan(Blackhole blackhole) {
+        // the loop CommandGroup.exec used before the index
+        String token = nextToken();
+        for (Command command : commands) {
+            for (String name : command.getCommandInfo().getNames()) {
+                if (name.isEmpty() || name.equals(token)) {
+                    blackhole.consume(command);
+                }
+            }
+        }
+    }
+}
@@ -1,42 +1,54 @@
 package com.ekkongames.jdacbl.audio;
 
-import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
-import com.sedmelluq.discord.lavaplayer.track.playback.AudioFrame;
+import com.sedmelluq.discord.lavaplayer.format.StandardAudioDataFormats;
+import com.sedmelluq.discord.lavaplayer.track.playback.MutableAudioFrame;
 import net.dv8tion.jda.api.audio.AudioSendHandler;
 
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 
+/**
+ * Sends the audio of a scheduler's player to Discord. Every frame is written into the same buffer,
+ * which JDA is done with by the time it asks for the next frame, so sending audio doesn't allocate
+ * anything.
+ */
 public class AudioPlayerSendHandler implements AudioSendHandler {
-    private final AudioPlayer audioPlayer;
-    private AudioFrame lastFrame;
-
-    public AudioPlayerSendHandler(AudioPlayer audioPlayer) {
-        this.audioPlayer = audioPlayer;
+    private final MusicScheduler scheduler;
+    private final ByteBuffer buffer;
+    private final MutableAudioFrame frame;
+    // whether the frame holds audio that hasn't been sent yet
+    private boolean provided;
+
+    public AudioPlayerSendHandler(MusicScheduler scheduler) {
+        this.scheduler = scheduler;
+        this.buffer = ByteBuffer.allocate(StandardAudioDataFormats.DISCORD_OPUS.maximumChunkSize());
+        this.frame = new MutableAudioFrame();
+        this.frame.setBuffer(buffer);
     }
 
     @Override
     public boolean canProvide() {
-        if (lastFrame == null) {
-            lastFrame = audioPlayer.provide();
+        if (!provided) {
+            provided = scheduler.provide(frame);
         }
 
-        return lastFrame != null;
+        return provided;
     }
 
     @Override
     public ByteBuffer provide20MsAudio() {
-        if (lastFrame == null) {
-            lastFrame = audioPlayer.provide();
+        if (!canProvide()) {
+            return null;
         }
+        provided = false;
 
-        byte[] data = lastFrame != null ? lastFrame.getData() : null;
-        lastFrame = null;
-
-        return ByteBuffer.wrap(data);
+        // cast so this also runs on Java 8, where flip() is only declared by Buffer
+        ((Buffer) buffer).flip();
+        return buffer;
     }
 
     @Override
     public boolean isOpus() {
         return true;
     }
-}
\ No newline at end of file
+}
@@ -7,51 +7,44 @@ import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
 import net.dv8tion.jda.api.entities.VoiceChannel;
 import net.dv8tion.jda.api.managers.AudioManager;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.impl.client.HttpClients;
-import org.json.JSONArray;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.URISyntaxException;
-import java.util.stream.Collectors;
+
+import java.util.List;
 
 /**
  * Holder for both the player and a track scheduler for one guild.
  */
 public class GuildVoiceController {
 
-    private final AudioPlayerManager manager;
+    private final TrackCache trackCache;
 
     /**
      * Track scheduler for the player.
      */
     private final MusicScheduler scheduler;
-    private final String youtubeToken;
+    private final YoutubeSearch youtubeSearch;
     private final AudioManager audioManager;
 
     /**
      * Creates a player and a track scheduler.
+     * @param youtubeSearch Search used for tracks that can't be loaded directly, or null to not search.
+     * @param trackCache Cache used to load tracks.
      * @param manager Audio player manager to use for creating the player.
      */
-    public GuildVoiceController(String youtubeToken, AudioPlayerManager manager, AudioManager audioManager) {
-        this.youtubeToken = youtubeToken;
+    public GuildVoiceController(YoutubeSearch youtubeSearch, TrackCache trackCache, AudioPlayerManager manager, AudioManager audioManager) {
+        this.youtubeSearch = youtubeSearch;
         this.audioManager = audioManager;
         AudioPlayer player = manager.createPlayer();
-        scheduler = new MusicScheduler(player);
+        AudioPlayer standby = manager.createPlayer();
+        scheduler = new MusicScheduler(player, standby, manager);
         player.addListener(scheduler);
+        standby.addListener(scheduler);
 
-        audioManager.setSendingHandler(new AudioPlayerSendHandler(player));
+        audioManager.setSendingHandler(new AudioPlayerSendHandler(scheduler));
 
-        this.manager = manager;
+        this.trackCache = trackCache;
     }
 
     public void connectToChannel(VoiceChannel channel) {
@@ -67,40 +60,8 @@ public class GuildVoiceController {
     }
 
     private String findOnYoutube(String trackName) {
-        HttpClient client = HttpClients.createDefault();
-        HttpGet get;
-        try {
-            URIBuilder builder = new URIBuilder("https://www.googleapis.com/youtube/v3/search");
-            builder.addParameter("key", youtubeToken);
-            builder.addParameter("maxResults", "1");
-            builder.addParameter("q", trackName);
-            get = new HttpGet(builder.build());
-        } catch (URISyntaxException e) {
-            e.printStackTrace();
-            return trackName;
-        }
-
-        try {
-            HttpResponse response = client.execute(get);
-            HttpEntity entity = response.getEntity();
-            if (entity != null) {
-                try (BufferedReader in = new BufferedReader(new InputStreamReader(entity.getContent()))) {
-                    // the response should come in as a single line
-                    JSONObject obj = new JSONObject(in.lines().collect(Collectors.joining("\n")));
-                    JSONArray results = obj.getJSONArray("items");
-                    if (results.length() > 0) {
-                        return (String) ((JSONObject) ((JSONObject) results.get(0)).get("id")).get("videoId");
-                    } else {
-                        System.err.println("Failed to get a response from YouTube.");
-                    }
-                }
-            } else {
-                System.err.println("Failed to get a response from YouTube.");
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return trackName;
+        String videoId = youtubeSearch.find(trackName);
+        return videoId != null ? videoId : trackName;
     }
 
     private void playTrack(String trackName, boolean searchYoutube) {
@@ -108,7 +69,7 @@ public class GuildVoiceController {
         if (searchYoutube) {
             loadSource = findOnYoutube(trackName);
         }
-        manager.loadItem(loadSource, new AudioLoadResultHandler() {
+        trackCache.loadItem(loadSource, new AudioLoadResultHandler() {
             @Override
             public void trackLoaded(AudioTrack track) {
                 scheduler.queue(track);
@@ -123,7 +84,7 @@ public class GuildVoiceController {
 
             @Override
             public void noMatches() {
-                if (!searchYoutube && youtubeToken != null) {
+                if (!searchYoutube && youtubeSearch != null) {
                     playTrack(trackName, true);
                     return;
                 }
@@ -132,7 +93,7 @@ public class GuildVoiceController {
 
             @Override
             public void loadFailed(FriendlyException exception) {
-                if (!searchYoutube && youtubeToken != null) {
+                if (!searchYoutube && youtubeSearch != null) {
                     playTrack(trackName, true);
                     return;
                 }
@@ -163,4 +124,92 @@ public class GuildVoiceController {
     public void stopTrack() {
         scheduler.stopTrack();
     }
+
+    /**
+     * @return Information about the track currently playing, or null if there is none.
+     */
+    public AudioTrackInfo getPlayingTrack() {
+        AudioTrack track = scheduler.getPlayingTrack();
+        return track == null ? null : track.getInfo();
+    }
+
+    /**
+     * @return The number of tracks in the queue.
+     */
+    public int getQueueSize() {
+        return scheduler.getQueueSize();
+    }
+
+    /**
+     * @return The total duration of the tracks in the queue in milliseconds, not counting streams.
+     */
+    public long getQueueDuration() {
+        return scheduler.getQueueDuration();
+    }
+
+    /**
+     * @param page The page to get, starting at 0.
+     * @param pageSize The number of tracks on each page.
+     * @return Information about the tracks on the page of the queue, in order.
+     */
+    public List<AudioTrackInfo> getQueuePage(int page, int pageSize) {
+        if (page < 0 || pageSize < 1) {
+            throw new IllegalArgumentException("Invalid page!");
+        }
+        return scheduler.getQueue(page * pageSize, pageSize);
+    }
+
+    /**
+     * @param index The position of the track in the queue, starting at 0.
+     * @return True if the track was removed, false if there is no track at the position.
+     */
+    public boolean removeFromQueue(int index) {
+        return scheduler.remove(index);
+    }
+
+    /**
+     * @param from The position of the track to move, starting at 0.
+     * @param to The position to move the track to.
+     * @return True if the track was moved, false if either position is outside the queue.
+     */
+    public boolean moveInQueue(int from, int to) {
+        return scheduler.move(from, to);
+    }
+
+    /**
+     * Put the queued tracks in a random order.
+     */
+    public void shuffleQueue() {
+        scheduler.shuffle();
+    }
+
+    /**
+     * Remove tracks that are queued more than once, keeping the first of each.
+     *
+     * @return The number of tracks removed.
+     */
+    public int removeDuplicatesFromQueue() {
+        return scheduler.removeDuplicates();
+    }
+
+    /**
+     * Remove every queued track, without stopping the one currently playing.
+     */
+    public void clearQueue() {
+        scheduler.clearQueue();
+    }
+
+    /**
+     * @return How long the silence between the last two tracks was, in milliseconds.
+     */
+    public double getLastTrackGapMillis() {
+        return scheduler.getLastGapMillis();
+    }
+
+    /**
+     * @return How long the silence between two tracks was on average, in milliseconds.
+     */
+    public double getAverageTrackGapMillis() {
+        return scheduler.getAverageGapMillis();
+    }
 }
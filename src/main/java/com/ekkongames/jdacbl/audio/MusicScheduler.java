@@ -1,26 +1,90 @@
 package com.ekkongames.jdacbl.audio;
 
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.player.event.AudioEventAdapter;
+import com.sedmelluq.discord.lavaplayer.tools.Units;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageInput;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageOutput;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import com.sedmelluq.discord.lavaplayer.track.DecodedTrackHolder;
+import com.sedmelluq.discord.lavaplayer.track.TrackMarker;
+import com.sedmelluq.discord.lavaplayer.track.TrackMarkerHandler.MarkerState;
+import com.sedmelluq.discord.lavaplayer.track.playback.MutableAudioFrame;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class schedules tracks for the audio player. It contains the queue of tracks.
+ * <p>
+ * Shortly before a track ends, the next track is started on a second, paused player, so that it
+ * has already loaded and buffered by the time the current track ends. The two players then swap,
+ * and the next track is heard without a gap.
+ * <p>
+ * Queued tracks are kept encoded and are only decoded when they are about to be played, so a long
+ * queue takes little memory. Positions in the queue start at 0, the next track to be played.
+ * <p>
+ * Lavaplayer calls the listener methods while holding the lock of the player, so the scheduler never
+ * locks anything itself. Every change to its state, including those made by the listener methods,
+ * is run one at a time on its executor instead.
  */
 public class MusicScheduler extends AudioEventAdapter {
-    private final AudioPlayer player;
-    private final BlockingQueue<AudioTrack> queue;
+    /**
+     * How long before the end of a track the next track is prepared, by default.
+     */
+    public static final long DEFAULT_PREFETCH_MILLIS = 10_000;
+
+    // the player audio is sent from
+    private volatile AudioPlayer player;
+    // the paused player the next track is prepared on
+    private volatile AudioPlayer standby;
+    private final AudioPlayerManager manager;
+    private final TrackQueue queue;
+    // runs every change to the fields below, one at a time
+    private final SerialExecutor executor;
+    private long prefetchMillis;
+    private boolean paused;
+    // the track last started on the active player, or null if it was stopped
+    private AudioTrack current;
+
+    // the queued track being prepared, and the decoded copy of it started on the standby player
+    private TrackQueue.Entry prefetchedEntry;
+    private AudioTrack prefetchedTrack;
+
+    // when the last track ended, or 0 once the next track can be heard
+    private volatile long gapStartedAt;
+
+    // metrics
+    private final AtomicLong transitions = new AtomicLong();
+    private final AtomicLong totalGapNanos = new AtomicLong();
+    private volatile long lastGapNanos;
 
     /**
-     * @param player The audio player this scheduler uses
+     * @param player  The audio player this scheduler uses
+     * @param standby A second audio player, used to prepare the next track
+     * @param manager The manager used to encode and decode queued tracks
      */
-    public MusicScheduler(AudioPlayer player) {
+    public MusicScheduler(AudioPlayer player, AudioPlayer standby, AudioPlayerManager manager) {
         this.player = player;
-        this.queue = new LinkedBlockingQueue<>();
+        this.standby = standby;
+        this.manager = manager;
+        this.queue = new TrackQueue();
+        this.executor = new SerialExecutor();
+        this.prefetchMillis = DEFAULT_PREFETCH_MILLIS;
+
+        standby.setPaused(true);
     }
 
     /**
@@ -29,46 +93,384 @@ public class MusicScheduler extends AudioEventAdapter {
      * @param track The track to play or add to queue.
      */
     public void queue(AudioTrack track) {
-        // Calling startTrack with the noInterrupt set to true will start the track only if nothing is currently playing. If
-        // something is playing, it returns false and does nothing. In that case the player was already playing so this
-        // track goes to the queue instead.
-        if (!player.startTrack(track, true)) {
-            queue.offer(track);
-        }
+        executor.execute(() -> {
+            // Calling startTrack with the noInterrupt set to true will start the track only if nothing is currently
+            // playing. If something is playing, it returns false and does nothing. In that case the player was already
+            // playing so this track goes to the queue instead.
+            if (player.startTrack(track, true)) {
+                current = track;
+            } else {
+                queue.add(encode(track));
+                onQueueChanged();
+            }
+        });
     }
 
     /**
      * Start the next track, stopping the current one if it is playing.
      */
     public void nextTrack() {
+        executor.execute(this::startNext);
+    }
+
+    private void startNext() {
+        TrackQueue.Entry next = queue.size() == 0 ? null : queue.remove(0);
+        if (next != null && next == prefetchedEntry) {
+            AudioTrack track = prefetchedTrack;
+            prefetchedEntry = null;
+            prefetchedTrack = null;
+
+            // the next track is already playing on the standby player, so swap the players
+            AudioPlayer previous = player;
+            player = standby;
+            standby = previous;
+            current = track;
+
+            previous.setPaused(true);
+            previous.stopTrack();
+            player.setPaused(paused);
+            armPrefetch(track);
+            return;
+        }
+
+        cancelPrefetch();
+
+        // skip tracks that can't be decoded anymore, such as those of a source that was removed
+        AudioTrack track = next == null ? null : decode(next);
+        while (next != null && track == null) {
+            next = queue.size() == 0 ? null : queue.remove(0);
+            track = next == null ? null : decode(next);
+        }
+
         // Start the next track, regardless of if something is already playing or not. In case queue was empty, we are
         // giving null to startTrack, which is a valid argument and will simply stop the player.
-        player.startTrack(queue.poll(), false);
+        current = track;
+        player.startTrack(track, false);
+    }
+
+    @Override
+    public void onTrackStart(AudioPlayer player, AudioTrack track) {
+        executor.execute(() -> {
+            // tracks started on the standby player are armed once the players swap
+            if (player == this.player && track == current) {
+                armPrefetch(track);
+            }
+        });
     }
 
     @Override
     public void onTrackEnd(AudioPlayer player, AudioTrack track, AudioTrackEndReason endReason) {
-        // Only start the next track if the end reason is suitable for it (FINISHED or LOAD_FAILED)
-        if (endReason.mayStartNext) {
-            nextTrack();
+        long endedAt = System.nanoTime();
+        executor.execute(() -> {
+            if (player != this.player) {
+                // the track being prepared failed to load or was cleaned up, so the next track will be started normally
+                if (track == prefetchedTrack) {
+                    prefetchedEntry = null;
+                    prefetchedTrack = null;
+                }
+                return;
+            }
+
+            // Only start the next track if the end reason is suitable for it (FINISHED or LOAD_FAILED), and if it
+            // wasn't replaced by another track while this event was waiting
+            if (endReason.mayStartNext && track == current) {
+                if (queue.size() > 0 && gapStartedAt == 0) {
+                    gapStartedAt = endedAt;
+                }
+                startNext();
+                if (current == null) {
+                    gapStartedAt = 0;
+                }
+            }
+        });
+    }
+
+    private void armPrefetch(AudioTrack track) {
+        long duration = track.getDuration();
+        if (duration == Units.DURATION_MS_UNKNOWN) {
+            return;
+        }
+
+        track.setMarker(new TrackMarker(Math.max(0, duration - prefetchMillis), (MarkerState state) -> {
+            if (state == MarkerState.REACHED || state == MarkerState.LATE || state == MarkerState.BYPASSED) {
+                executor.execute(() -> prefetch(track));
+            }
+        }));
+    }
+
+    private boolean isEnding(AudioTrack track) {
+        long duration = track.getDuration();
+        return duration != Units.DURATION_MS_UNKNOWN && duration - track.getPosition() <= prefetchMillis;
+    }
+
+    private void prefetch(AudioTrack track) {
+        if (track != current || prefetchedEntry != null || queue.size() == 0) {
+            return;
+        }
+
+        // the queued track stays encoded, so it can still be played normally if the queue changes
+        TrackQueue.Entry next = queue.get(0);
+        AudioTrack nextTrack = decode(next);
+        if (nextTrack == null) {
+            return;
+        }
+
+        prefetchedEntry = next;
+        prefetchedTrack = nextTrack;
+        standby.setVolume(player.getVolume());
+        standby.startTrack(nextTrack, false);
+    }
+
+    private void cancelPrefetch() {
+        if (prefetchedEntry == null) {
+            return;
+        }
+
+        prefetchedEntry = null;
+        prefetchedTrack = null;
+        standby.stopTrack();
+    }
+
+    /**
+     * Makes sure the track being prepared is still the next one, after the queue changed.
+     */
+    private void onQueueChanged() {
+        if (prefetchedEntry != null && (queue.size() == 0 || queue.get(0) != prefetchedEntry)) {
+            cancelPrefetch();
+        }
+
+        // the current track may already be too close to its end for its marker to prepare the next one
+        if (current != null && isEnding(current)) {
+            prefetch(current);
+        }
+    }
+
+    private TrackQueue.Entry encode(AudioTrack track) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            manager.encodeTrack(new MessageOutput(out), track);
+        } catch (IOException | RuntimeException e) {
+            // some sources can't encode their tracks, so keep the track itself
+            return new TrackQueue.Entry(null, track, track.getDuration());
+        }
+        return new TrackQueue.Entry(out.toByteArray(), null, track.getDuration());
+    }
+
+    /**
+     * @return a track that hasn't been played yet, or null if the entry couldn't be decoded
+     */
+    private AudioTrack decode(TrackQueue.Entry entry) {
+        if (entry.getEncoded() == null) {
+            return entry.getTrack().makeClone();
+        }
+
+        try {
+            DecodedTrackHolder holder = manager.decodeTrack(new MessageInput(new ByteArrayInputStream(entry.getEncoded())));
+            if (holder != null && holder.decodedTrack != null) {
+                return holder.decodedTrack;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        System.err.println("Failed to decode a queued track!");
+        return null;
+    }
+
+    /**
+     * Provides the next frame of audio to send.
+     *
+     * @param frame The frame to store the audio in.
+     * @return Whether there was any audio.
+     */
+    boolean provide(MutableAudioFrame frame) {
+        // lavaplayer stops the track of a player that isn't asked for audio for a while, so ask the standby player as
+        // well; it is paused, so it doesn't give any audio
+        standby.provide(frame);
+
+        AudioPlayer current = player;
+        boolean provided = current.provide(frame);
+        if (!provided && player != current) {
+            // the track ended while providing this frame and the players swapped, so the next track can be heard now
+            provided = player.provide(frame);
+        }
+
+        if (provided) {
+            long started = gapStartedAt;
+            if (started != 0) {
+                gapStartedAt = 0;
+                long gap = System.nanoTime() - started;
+                lastGapNanos = gap;
+                totalGapNanos.addAndGet(gap);
+                transitions.incrementAndGet();
+            }
         }
+        return provided;
+    }
+
+    /**
+     * @param time How long before the end of a track to prepare the next one.
+     * @param unit The unit of the time.
+     */
+    public void setPrefetchTime(long time, TimeUnit unit) {
+        long millis = unit.toMillis(time);
+        executor.execute(() -> prefetchMillis = millis);
     }
 
     public void setVolume(int volume) {
-        player.setVolume(volume);
+        executor.execute(() -> {
+            player.setVolume(volume);
+            standby.setVolume(volume);
+        });
     }
 
     /**
      * @param value True to pause, false to resume
      */
     public void setPaused(boolean value) {
-        player.setPaused(value);
+        executor.execute(() -> {
+            paused = value;
+            player.setPaused(value);
+        });
     }
 
     /**
      * Stop currently playing track.
      */
     public void stopTrack() {
-        player.stopTrack();
+        executor.execute(() -> {
+            cancelPrefetch();
+            gapStartedAt = 0;
+            current = null;
+            player.stopTrack();
+        });
+    }
+
+    /**
+     * @return The track currently playing, or null if there is none.
+     */
+    public AudioTrack getPlayingTrack() {
+        return player.getPlayingTrack();
+    }
+
+    /**
+     * @return The number of tracks in the queue.
+     */
+    public int getQueueSize() {
+        return executor.call(queue::size);
+    }
+
+    /**
+     * @return The total duration of the tracks in the queue in milliseconds, not counting streams.
+     */
+    public long getQueueDuration() {
+        return executor.call(queue::getDuration);
+    }
+
+    /**
+     * @param from  The position of the first track.
+     * @param count The most tracks to return.
+     * @return Information about the queued tracks from the position onwards, in order.
+     */
+    public List<AudioTrackInfo> getQueue(int from, int count) {
+        List<TrackQueue.Entry> entries = executor.call(() -> queue.get(from, count));
+        // decoding only reads the entries, so it doesn't need to hold up the executor
+        List<AudioTrackInfo> infos = new ArrayList<>(entries.size());
+        for (TrackQueue.Entry entry : entries) {
+            AudioTrack track = entry.getEncoded() == null ? entry.getTrack() : decode(entry);
+            if (track != null) {
+                infos.add(track.getInfo());
+            }
+        }
+        return infos;
+    }
+
+    /**
+     * @param index The position of the track to remove.
+     * @return True if the track was removed, false if there is no track at the position.
+     */
+    public boolean remove(int index) {
+        return executor.call(() -> {
+            if (index < 0 || index >= queue.size()) {
+                return false;
+            }
+            queue.remove(index);
+            onQueueChanged();
+            return true;
+        });
+    }
+
+    /**
+     * @param from The position of the track to move.
+     * @param to   The position to move the track to.
+     * @return True if the track was moved, false if either position is outside the queue.
+     */
+    public boolean move(int from, int to) {
+        return executor.call(() -> {
+            int size = queue.size();
+            if (from < 0 || from >= size || to < 0 || to >= size) {
+                return false;
+            }
+            queue.move(from, to);
+            onQueueChanged();
+            return true;
+        });
+    }
+
+    /**
+     * Put the queued tracks in a random order.
+     */
+    public void shuffle() {
+        executor.execute(() -> {
+            queue.shuffle(ThreadLocalRandom.current());
+            onQueueChanged();
+        });
+    }
+
+    /**
+     * Remove tracks that are queued more than once, keeping the first of each.
+     *
+     * @return The number of tracks removed.
+     */
+    public int removeDuplicates() {
+        return executor.call(() -> {
+            Set<Object> seen = new HashSet<>();
+            int removed = queue.retain((TrackQueue.Entry entry) -> seen.add(
+                    entry.getEncoded() != null ? ByteBuffer.wrap(entry.getEncoded()) : entry.getTrack().getIdentifier()
+            ));
+            onQueueChanged();
+            return removed;
+        });
+    }
+
+    /**
+     * Remove every queued track.
+     */
+    public void clearQueue() {
+        executor.execute(() -> {
+            queue.clear();
+            onQueueChanged();
+        });
+    }
+
+    /**
+     * @return The number of times one track ended and the next one was heard.
+     */
+    public long getTransitionCount() {
+        return transitions.get();
+    }
+
+    /**
+     * @return How long the silence between the last two tracks was, in milliseconds.
+     */
+    public double getLastGapMillis() {
+        return lastGapNanos / 1e6;
+    }
+
+    /**
+     * @return How long the silence between two tracks was on average, in milliseconds.
+     */
+    public double getAverageGapMillis() {
+        long transitions = this.transitions.get();
+        return transitions == 0 ? 0 : totalGapNanos.get() / 1e6 / transitions;
     }
 }
@@ -0,0 +1,91 @@
+package com.ekkongames.jdacbl.audio;
+
+import com.ekkongames.jdacbl.utils.Log;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Runs tasks one at a time, in the order they were submitted, on threads shared by every guild.
+ * State only touched by these tasks needs no lock, so it can call into lavaplayer freely.
+ */
+final class SerialExecutor implements Executor {
+
+    private static final String TAG = "SerialExecutor";
+
+    private static final ExecutorService threads = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "Music-Scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private boolean running;
+    // the thread running tasks, or null if none are running
+    private volatile Thread current;
+
+    @Override
+    public void execute(Runnable task) {
+        synchronized (this) {
+            tasks.add(task);
+            if (running) {
+                return;
+            }
+            running = true;
+        }
+        threads.execute(this::drain);
+    }
+
+    private void drain() {
+        current = Thread.currentThread();
+        while (true) {
+            Runnable task;
+            synchronized (this) {
+                task = tasks.poll();
+                if (task == null) {
+                    current = null;
+                    running = false;
+                    return;
+                }
+            }
+
+            // a failed task must not stop the tasks queued after it, or they would never run
+            try {
+                task.run();
+            } catch (Throwable t) {
+                Log.e(TAG, "Music task failed", t);
+            }
+        }
+    }
+
+    /**
+     * Runs a task and waits for its result. If called from a task, it is run right away.
+     * Anything the task throws is rethrown as is.
+     *
+     * @param task the task to run
+     * @param <T>  the type of the result
+     * @return the result of the task
+     */
+    <T> T call(Supplier<T> task) {
+        if (current == Thread.currentThread()) {
+            return task.get();
+        }
+        try {
+            return CompletableFuture.supplyAsync(task, this).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
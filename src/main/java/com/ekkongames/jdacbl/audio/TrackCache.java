@@ -0,0 +1,261 @@
+package com.ekkongames.jdacbl.audio;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioItem;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers the tracks and playlists recently loaded by any guild, so loading the same identifier
+ * again doesn't ask the source (such as YouTube) to resolve it again. A track can only be played
+ * once, so every load is given its own copy of what was remembered.
+ * <p>
+ * While an identifier is being loaded, anyone else loading it waits for the same load, so a burst
+ * of requests for one song only asks the source once. Only successful loads are remembered, for up
+ * to an hour, and only the most recently used identifiers are kept.
+ */
+public final class TrackCache {
+
+    /**
+     * The number of identifiers remembered by default.
+     */
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    private static final long TTL_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    private final AudioPlayerManager manager;
+    private final int maxSize;
+    // the current time in nanoseconds
+    private final LongSupplier clock;
+
+    // the most recently used items, by identifier; the items themselves are never played
+    private final Map<String, CachedItem> items;
+    // the handlers waiting for each identifier being loaded, guarded by the lock on items
+    private final Map<String, List<AudioLoadResultHandler>> loading = new HashMap<>();
+
+    // metrics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param manager the manager used to load items that aren't remembered
+     * @param maxSize the number of identifiers to remember
+     */
+    public TrackCache(AudioPlayerManager manager, int maxSize) {
+        this(manager, maxSize, System::nanoTime);
+    }
+
+    TrackCache(AudioPlayerManager manager, int maxSize, LongSupplier clock) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache must hold at least one item!");
+        }
+        this.manager = manager;
+        this.maxSize = maxSize;
+        this.clock = clock;
+        this.items = new LinkedHashMap<String, CachedItem>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedItem> eldest) {
+                return size() > TrackCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Loads an item, using a copy of it if it was loaded recently, or waiting for the same item if
+     * it is being loaded already.
+     *
+     * @param identifier the identifier of the item, such as a URL
+     * @param handler    the handler to give the loaded item to; called on the current thread if
+     *                   the item was loaded recently, otherwise on the thread loading the item
+     */
+    public void loadItem(String identifier, AudioLoadResultHandler handler) {
+        AudioItem cached;
+        synchronized (items) {
+            cached = get(identifier);
+            if (cached == null) {
+                List<AudioLoadResultHandler> waiting = loading.get(identifier);
+                if (waiting != null) {
+                    coalesced.incrementAndGet();
+                    waiting.add(handler);
+                    return;
+                }
+
+                List<AudioLoadResultHandler> handlers = new ArrayList<>();
+                handlers.add(handler);
+                loading.put(identifier, handlers);
+            }
+        }
+
+        if (cached != null) {
+            hits.incrementAndGet();
+            if (cached instanceof AudioTrack) {
+                handler.trackLoaded(((AudioTrack) cached).makeClone());
+            } else {
+                handler.playlistLoaded(copy((AudioPlaylist) cached));
+            }
+            return;
+        }
+
+        misses.incrementAndGet();
+        try {
+            manager.loadItem(identifier, new AudioLoadResultHandler() {
+                @Override
+                public void trackLoaded(AudioTrack track) {
+                    // keep a copy, since the track handed out will be played
+                    AudioTrack copy = track.makeClone();
+                    List<AudioLoadResultHandler> handlers = finish(identifier, copy);
+                    handlers.get(0).trackLoaded(track);
+                    for (int i = 1; i < handlers.size(); i++) {
+                        handlers.get(i).trackLoaded(copy.makeClone());
+                    }
+                }
+
+                @Override
+                public void playlistLoaded(AudioPlaylist playlist) {
+                    AudioPlaylist copy = copy(playlist);
+                    List<AudioLoadResultHandler> handlers = finish(identifier, copy);
+                    handlers.get(0).playlistLoaded(playlist);
+                    for (int i = 1; i < handlers.size(); i++) {
+                        handlers.get(i).playlistLoaded(copy(copy));
+                    }
+                }
+
+                @Override
+                public void noMatches() {
+                    for (AudioLoadResultHandler handler : finish(identifier, null)) {
+                        handler.noMatches();
+                    }
+                }
+
+                @Override
+                public void loadFailed(FriendlyException exception) {
+                    for (AudioLoadResultHandler handler : finish(identifier, null)) {
+                        handler.loadFailed(exception);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            // the load never started, so fail anyone who joined it rather than leave them waiting
+            List<AudioLoadResultHandler> handlers = finish(identifier, null);
+            if (handlers != null) {
+                FriendlyException exception = new FriendlyException("Couldn't start loading the item.",
+                        FriendlyException.Severity.FAULT, e);
+                for (int i = 1; i < handlers.size(); i++) {
+                    handlers.get(i).loadFailed(exception);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Ends a load, remembering the item if it was loaded.
+     *
+     * @return the handlers waiting for the item, starting with the one that started the load
+     */
+    private List<AudioLoadResultHandler> finish(String identifier, AudioItem item) {
+        synchronized (items) {
+            if (item != null) {
+                items.put(identifier, new CachedItem(item, clock.getAsLong() + TTL_NANOS));
+            }
+            return loading.remove(identifier);
+        }
+    }
+
+    // only called with the lock on items held
+    private AudioItem get(String identifier) {
+        CachedItem entry = items.get(identifier);
+        if (entry == null) {
+            return null;
+        }
+        if (clock.getAsLong() - entry.expiresAt >= 0) {
+            items.remove(identifier);
+            return null;
+        }
+        return entry.item;
+    }
+
+    private static AudioPlaylist copy(AudioPlaylist playlist) {
+        List<AudioTrack> tracks = new ArrayList<>(playlist.getTracks().size());
+        AudioTrack selectedTrack = null;
+        for (AudioTrack track : playlist.getTracks()) {
+            AudioTrack clone = track.makeClone();
+            if (track == playlist.getSelectedTrack()) {
+                selectedTrack = clone;
+            }
+            tracks.add(clone);
+        }
+        return new BasicAudioPlaylist(playlist.getName(), tracks, selectedTrack, playlist.isSearchResult());
+    }
+
+    /**
+     * Forgets every item loaded so far.
+     */
+    public void clear() {
+        synchronized (items) {
+            items.clear();
+        }
+    }
+
+    /**
+     * @return the number of identifiers remembered
+     */
+    public int getSize() {
+        synchronized (items) {
+            return items.size();
+        }
+    }
+
+    /**
+     * @return the number of loads given a copy of a remembered item
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of loads that waited for the same item being loaded already
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return the number of loads that had to be resolved by the source
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the fraction of loads that didn't have to be resolved by the source
+     */
+    public double getHitRate() {
+        long saved = hits.get() + coalesced.get();
+        long total = saved + misses.get();
+        return total == 0 ? 0 : (double) saved / total;
+    }
+
+    private static final class CachedItem {
+        private final AudioItem item;
+        private final long expiresAt;
+
+        CachedItem(AudioItem item, long expiresAt) {
+            this.item = item;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.ekkongames.jdacbl.audio;
+
+import com.sedmelluq.discord.lavaplayer.tools.Units;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * The queue of a {@link MusicScheduler}, which can be read and changed at any position in
+ * logarithmic time. Tracks are kept in lavaplayer's encoded form, which is much smaller than the
+ * track itself, and are only decoded when needed.
+ * <p>
+ * The queue is a treap ordered by position, where each entry knows the number of entries and the
+ * total duration below it. It isn't thread-safe; the scheduler only uses it from its executor.
+ */
+final class TrackQueue {
+
+    private Entry root;
+
+    /**
+     * @return the number of tracks in the queue
+     */
+    int size() {
+        return size(root);
+    }
+
+    /**
+     * @return the total duration of the tracks in the queue in milliseconds, not counting streams
+     */
+    long getDuration() {
+        return root == null ? 0 : root.totalDuration;
+    }
+
+    /**
+     * @param index the position of the entry
+     * @return the entry at the position
+     */
+    Entry get(int index) {
+        checkIndex(index, size());
+
+        Entry entry = root;
+        while (true) {
+            int leftSize = size(entry.left);
+            if (index < leftSize) {
+                entry = entry.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                entry = entry.right;
+            } else {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * @param from  the position of the first entry
+     * @param count the most entries to return
+     * @return the entries from the position onwards, in order
+     */
+    List<Entry> get(int from, int count) {
+        List<Entry> entries = new ArrayList<>(Math.max(0, Math.min(count, size() - from)));
+        collect(root, from, from + count, 0, entries);
+        return entries;
+    }
+
+    private static void collect(Entry entry, int from, int to, int offset, List<Entry> entries) {
+        if (entry == null) {
+            return;
+        }
+
+        int index = offset + size(entry.left);
+        if (from < index) {
+            collect(entry.left, from, to, offset, entries);
+        }
+        if (from <= index && index < to) {
+            entries.add(entry);
+        }
+        if (index + 1 < to) {
+            collect(entry.right, from, to, index + 1, entries);
+        }
+    }
+
+    /**
+     * Adds an entry to the end of the queue.
+     *
+     * @param entry the entry to add
+     */
+    void add(Entry entry) {
+        add(size(), entry);
+    }
+
+    /**
+     * @param index the position to add the entry at
+     * @param entry the entry to add
+     */
+    void add(int index, Entry entry) {
+        checkIndex(index, size() + 1);
+
+        entry.left = null;
+        entry.right = null;
+        entry.priority = ThreadLocalRandom.current().nextInt();
+        update(entry);
+
+        Entry[] parts = split(root, index);
+        root = merge(merge(parts[0], entry), parts[1]);
+    }
+
+    /**
+     * @param index the position of the entry
+     * @return the entry that was removed
+     */
+    Entry remove(int index) {
+        checkIndex(index, size());
+
+        Entry[] parts = split(root, index);
+        Entry[] rest = split(parts[1], 1);
+        root = merge(parts[0], rest[1]);
+        return rest[0];
+    }
+
+    /**
+     * @param from the position of the entry to move
+     * @param to   the position to move the entry to
+     */
+    void move(int from, int to) {
+        checkIndex(to, size());
+        add(to, remove(from));
+    }
+
+    /**
+     * Removes every entry.
+     */
+    void clear() {
+        root = null;
+    }
+
+    /**
+     * Puts the entries in a random order.
+     *
+     * @param random the source of randomness
+     */
+    void shuffle(Random random) {
+        List<Entry> entries = get(0, size());
+        Collections.shuffle(entries, random);
+        root = build(entries);
+    }
+
+    /**
+     * Keeps only the entries matching a filter, in the same order.
+     *
+     * @param filter the filter, called once for each entry in order
+     * @return the number of entries removed
+     */
+    int retain(Predicate<Entry> filter) {
+        List<Entry> entries = get(0, size());
+        List<Entry> kept = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            if (filter.test(entry)) {
+                kept.add(entry);
+            }
+        }
+        root = build(kept);
+        return entries.size() - kept.size();
+    }
+
+    /**
+     * Builds a treap holding the entries in order, in linear time.
+     */
+    private static Entry build(List<Entry> entries) {
+        Random random = ThreadLocalRandom.current();
+
+        // the entries on the rightmost path of the treap built so far
+        Deque<Entry> path = new ArrayDeque<>();
+        for (Entry entry : entries) {
+            entry.left = null;
+            entry.right = null;
+            entry.priority = random.nextInt();
+
+            Entry last = null;
+            while (!path.isEmpty() && path.peek().priority < entry.priority) {
+                last = path.pop();
+                update(last);
+            }
+            entry.left = last;
+            if (!path.isEmpty()) {
+                path.peek().right = entry;
+            }
+            path.push(entry);
+        }
+
+        Entry root = null;
+        while (!path.isEmpty()) {
+            root = path.pop();
+            update(root);
+        }
+        return root;
+    }
+
+    /**
+     * @return the first {@code count} entries of the treap, and the rest
+     */
+    private static Entry[] split(Entry entry, int count) {
+        if (entry == null) {
+            return new Entry[2];
+        }
+
+        Entry[] parts;
+        if (size(entry.left) < count) {
+            parts = split(entry.right, count - size(entry.left) - 1);
+            entry.right = parts[0];
+            parts[0] = entry;
+        } else {
+            parts = split(entry.left, count);
+            entry.left = parts[1];
+            parts[1] = entry;
+        }
+        update(entry);
+        return parts;
+    }
+
+    private static Entry merge(Entry left, Entry right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+
+    private static void update(Entry entry) {
+        entry.size = 1 + size(entry.left) + size(entry.right);
+        entry.totalDuration = entry.duration + duration(entry.left) + duration(entry.right);
+    }
+
+    private static int size(Entry entry) {
+        return entry == null ? 0 : entry.size;
+    }
+
+    private static long duration(Entry entry) {
+        return entry == null ? 0 : entry.totalDuration;
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * A track in the queue.
+     */
+    static final class Entry {
+        // the track as encoded by lavaplayer, or null if its source can't encode it
+        private final byte[] encoded;
+        // the track itself, only kept if it couldn't be encoded
+        private final AudioTrack track;
+        private final long duration;
+
+        private Entry left;
+        private Entry right;
+        private int priority;
+        private int size;
+        private long totalDuration;
+
+        Entry(byte[] encoded, AudioTrack track, long duration) {
+            this.encoded = encoded;
+            this.track = track;
+            this.duration = duration == Units.DURATION_MS_UNKNOWN ? 0 : duration;
+        }
+
+        byte[] getEncoded() {
+            return encoded;
+        }
+
+        AudioTrack getTrack() {
+            return track;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.ekkongames.jdacbl.audio;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds videos on YouTube for tracks that couldn't be loaded directly. One search is shared by the
+ * whole bot: its connections to YouTube are kept open between searches, and recent results are
+ * remembered, so searching for a popular song again doesn't make a request.
+ */
+public final class YoutubeSearch {
+
+    /**
+     * The URL of YouTube's search API.
+     */
+    public static final String DEFAULT_URL = "https://www.googleapis.com/youtube/v3/search";
+
+    private static final int MAX_CONNECTIONS = 8;
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    private static final int MAX_CACHED = 512;
+    private static final long CACHE_TTL_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    private final String token;
+    private final String url;
+    private final CloseableHttpClient client;
+
+    // the most recently used results, by query
+    private final Map<String, Result> cache = new LinkedHashMap<String, Result>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
+    /**
+     * @param token the token used to search
+     * @param url   the URL of the search API, such as {@link #DEFAULT_URL}
+     */
+    public YoutubeSearch(String token, String url) {
+        this.token = token;
+        this.url = url;
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+
+        this.client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(TIMEOUT_MILLIS)
+                        .setConnectionRequestTimeout(TIMEOUT_MILLIS)
+                        .setSocketTimeout(TIMEOUT_MILLIS)
+                        .build())
+                .build();
+    }
+
+    /**
+     * Finds the video that best matches a query.
+     *
+     * @param query what to search for
+     * @return the ID of the video, or null if none was found
+     */
+    public String find(String query) {
+        synchronized (cache) {
+            Result cached = cache.get(query);
+            if (cached != null) {
+                if (System.nanoTime() - cached.expiresAt < 0) {
+                    return cached.videoId;
+                }
+                cache.remove(query);
+            }
+        }
+
+        String videoId = search(query);
+        if (videoId != null) {
+            synchronized (cache) {
+                cache.put(query, new Result(videoId, System.nanoTime() + CACHE_TTL_NANOS));
+            }
+        }
+        return videoId;
+    }
+
+    private String search(String query) {
+        HttpGet get;
+        try {
+            URIBuilder builder = new URIBuilder(url);
+            builder.addParameter("key", token);
+            builder.addParameter("maxResults", "1");
+            builder.addParameter("q", query);
+            get = new HttpGet(builder.build());
+        } catch (URISyntaxException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        try (CloseableHttpResponse response = client.execute(get)) {
+            HttpEntity entity = response.getEntity();
+            if (entity == null) {
+                System.err.println("Failed to get a response from YouTube.");
+                return null;
+            }
+
+            try (Reader in = new InputStreamReader(entity.getContent(), StandardCharsets.UTF_8)) {
+                JSONArray results = new JSONObject(new JSONTokener(in)).getJSONArray("items");
+                if (results.length() > 0) {
+                    return results.getJSONObject(0).getJSONObject("id").getString("videoId");
+                }
+                System.err.println("Failed to get a response from YouTube.");
+            } catch (JSONException e) {
+                System.err.println("Failed to read the response from YouTube. (Reason: " + e.getMessage() + ")");
+            } finally {
+                // read whatever is left, so the connection can be reused
+                EntityUtils.consumeQuietly(entity);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Closes the connections to YouTube. The search can't be used afterwards.
+     */
+    public void close() {
+        try {
+            client.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static final class Result {
+        private final String videoId;
+        private final long expiresAt;
+
+        Result(String videoId, long expiresAt) {
+            this.videoId = videoId;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package com.ekkongames.jdacbl.bot;
 
+import com.ekkongames.jdacbl.audio.TrackCache;
+import com.ekkongames.jdacbl.audio.YoutubeSearch;
 import com.ekkongames.jdacbl.bot.jar.EntryPoint;
 import com.ekkongames.jdacbl.bot.jar.DynamicJar;
 import com.ekkongames.jdacbl.client.HostWindow;
+import com.ekkongames.jdacbl.commands.CommandExecutor;
 import com.ekkongames.jdacbl.utils.Log;
+import com.ekkongames.jdacbl.utils.VirtualThreads;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.source.AudioSourceManagers;
@@ -46,6 +50,8 @@ public class Bot {
     private DynamicJar<BotInfo, EntryPoint> jar = null;
 
     private AudioPlayerManager audioManager;
+    private TrackCache trackCache;
+    private YoutubeSearch youtubeSearch;
 
     private Map<String, GuildState> guildStates;
     private BotListener botListener;
@@ -141,6 +147,14 @@ public class Bot {
     }
 
     private void prepareAsync() {
+        if (VirtualThreads.isRequested()) {
+            asyncExecutor = VirtualThreads.newThreadPerTaskExecutor("Bot-Background-");
+            if (asyncExecutor != null) {
+                Log.i(TAG, "Running background tasks on virtual threads.");
+                return;
+            }
+            Log.w(TAG, "Virtual threads aren't supported by this JDK, using platform threads instead.");
+        }
         asyncExecutor = Executors.newCachedThreadPool();
     }
 
@@ -217,6 +231,7 @@ public class Bot {
     private void initAudio() {
         audioManager = new DefaultAudioPlayerManager();
         AudioSourceManagers.registerRemoteSources(audioManager);
+        trackCache = new TrackCache(audioManager, TrackCache.DEFAULT_MAX_SIZE);
     }
 
     void onReady(ReadyEvent event) {
@@ -251,7 +266,15 @@ public class Bot {
                         .build();
                 jda.awaitReady();
 
-                guildStates = jda.getGuilds().stream().map(guild -> new GuildState(info.getYoutubeToken(), audioManager, guild))
+                // the guild states are replaced below, so nothing uses the old search anymore
+                if (youtubeSearch != null) {
+                    youtubeSearch.close();
+                }
+                youtubeSearch = info.getYoutubeToken() == null
+                        ? null
+                        : new YoutubeSearch(info.getYoutubeToken(), info.getYoutubeSearchUrl());
+
+                guildStates = jda.getGuilds().stream().map(guild -> new GuildState(youtubeSearch, trackCache, audioManager, guild))
                         .collect(Collectors.toMap(
                                 (GuildState guildState) -> guildState.getGuild().getId(),
                                 (guildState -> guildState)
@@ -339,6 +362,10 @@ public class Bot {
             } catch (InterruptedException e) {
                 asyncExecutor.shutdownNow();
             }
+
+            if (youtubeSearch != null) {
+                youtubeSearch.close();
+            }
         });
     }
 
@@ -390,6 +417,21 @@ public class Bot {
         }
     }
 
+    /**
+     * @return the executor commands are run on, or null if they are run on JDA's event thread
+     */
+    public CommandExecutor getCommandExecutor() {
+        BotInfo info = getInfo();
+        return info == null ? null : info.getCommandExecutor();
+    }
+
+    /**
+     * @return the cache of tracks loaded by any guild
+     */
+    public TrackCache getTrackCache() {
+        return trackCache;
+    }
+
     public JDA getJDA() {
         return jda;
     }
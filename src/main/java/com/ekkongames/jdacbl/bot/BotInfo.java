@@ -1,6 +1,9 @@
 package com.ekkongames.jdacbl.bot;
 
+import com.ekkongames.jdacbl.audio.YoutubeSearch;
+import com.ekkongames.jdacbl.commands.CommandExecutor;
 import com.ekkongames.jdacbl.commands.CommandGroup;
+import com.ekkongames.jdacbl.commands.CommandRouter;
 
 import java.util.ArrayList;
 import java.util.prefs.Preferences;
@@ -12,9 +15,12 @@ public class BotInfo {
 
     private final String authToken;
     private String youtubeToken;
+    private String youtubeSearchUrl;
 
     private String game;
     private CommandGroup[] commandGroups;
+    private CommandRouter commandRouter;
+    private CommandExecutor commandExecutor;
 
     private volatile boolean loaded;
 
@@ -27,6 +33,7 @@ public class BotInfo {
         for (CommandGroup commandGroup : commandGroups) {
             commandGroup.addTo(bot);
         }
+        commandRouter = new CommandRouter(commandGroups);
         loaded = true;
     }
 
@@ -46,6 +53,9 @@ public class BotInfo {
         for (CommandGroup commandGroup : commandGroups) {
             commandGroup.free();
         }
+        if (commandExecutor != null) {
+            commandExecutor.shutdown();
+        }
     }
 
     private void assertLoaded() {
@@ -58,6 +68,21 @@ public class BotInfo {
         return commandGroups;
     }
 
+    /**
+     * @return the router used to find the command groups that could handle a message
+     */
+    public CommandRouter getCommandRouter() {
+        assertLoaded();
+        return commandRouter;
+    }
+
+    /**
+     * @return the executor commands are run on, or null if they are run on JDA's event thread
+     */
+    public CommandExecutor getCommandExecutor() {
+        return commandExecutor;
+    }
+
     String getAuthToken() {
         return authToken;
     }
@@ -66,6 +91,13 @@ public class BotInfo {
         return youtubeToken;
     }
 
+    /**
+     * @return the URL of the API used to search for music on YouTube
+     */
+    public String getYoutubeSearchUrl() {
+        return youtubeSearchUrl;
+    }
+
     public String getGame() {
         return game;
     }
@@ -75,9 +107,12 @@ public class BotInfo {
         private String game;
         private final ArrayList<CommandGroup> commandGroups;
         private String youtubeToken;
+        private String youtubeSearchUrl;
+        private CommandExecutor commandExecutor;
 
         public Builder() {
             game = "";
+            youtubeSearchUrl = YoutubeSearch.DEFAULT_URL;
             commandGroups = new ArrayList<>();
         }
 
@@ -103,6 +138,18 @@ public class BotInfo {
             return this;
         }
 
+        /**
+         * Sets the URL of the API used to search for music on YouTube, such as a local server
+         * standing in for YouTube while testing.
+         *
+         * @param url the URL to use
+         * @return the builder for method call chaining
+         */
+        public BotInfo.Builder setYoutubeSearchUrl(String url) {
+            this.youtubeSearchUrl = url;
+            return this;
+        }
+
         /**
          * Sets the commands that are available with this bot.
          *
@@ -114,6 +161,18 @@ public class BotInfo {
             return this;
         }
 
+        /**
+         * Runs commands on the specified executor instead of JDA's event thread, so that slow
+         * commands don't delay other events.
+         *
+         * @param commandExecutor the executor to run commands on
+         * @return the builder for method call chaining
+         */
+        public BotInfo.Builder setCommandExecutor(CommandExecutor commandExecutor) {
+            this.commandExecutor = commandExecutor;
+            return this;
+        }
+
         /**
          * Builds a BotInfo object that can be used to initialize a bot.
          *
@@ -124,6 +183,8 @@ public class BotInfo {
             BotInfo botInfo = new BotInfo(authToken);
             botInfo.game = game;
             botInfo.youtubeToken = youtubeToken;
+            botInfo.youtubeSearchUrl = youtubeSearchUrl;
+            botInfo.commandExecutor = commandExecutor;
 
             // ensure a command group exists
             if (commandGroups.size() == 0) {
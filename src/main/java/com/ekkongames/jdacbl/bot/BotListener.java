@@ -1,14 +1,31 @@
 package com.ekkongames.jdacbl.bot;
 
 import com.ekkongames.jdacbl.bot.admin.*;
+import com.ekkongames.jdacbl.commands.CommandExecutor;
 import com.ekkongames.jdacbl.commands.CommandGroup;
 import com.ekkongames.jdacbl.utils.BotUtils;
+import com.ekkongames.jdacbl.utils.GuildIndex;
 import com.ekkongames.jdacbl.utils.Log;
+import com.ekkongames.jdacbl.utils.MemberRetriever;
+import com.ekkongames.jdacbl.utils.PermissionCache;
 import net.dv8tion.jda.api.entities.*;
 import net.dv8tion.jda.api.events.DisconnectEvent;
 import net.dv8tion.jda.api.events.ReadyEvent;
+import net.dv8tion.jda.api.events.channel.voice.VoiceChannelCreateEvent;
+import net.dv8tion.jda.api.events.channel.voice.VoiceChannelDeleteEvent;
+import net.dv8tion.jda.api.events.channel.voice.update.VoiceChannelUpdateNameEvent;
+import net.dv8tion.jda.api.events.channel.voice.update.VoiceChannelUpdatePositionEvent;
+import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
 import net.dv8tion.jda.api.events.guild.member.GuildMemberJoinEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRemoveEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleAddEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleRemoveEvent;
+import net.dv8tion.jda.api.events.guild.update.GuildUpdateOwnerEvent;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.events.role.RoleCreateEvent;
+import net.dv8tion.jda.api.events.role.RoleDeleteEvent;
+import net.dv8tion.jda.api.events.role.update.RoleUpdateNameEvent;
+import net.dv8tion.jda.api.events.role.update.RoleUpdatePositionEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import org.jetbrains.annotations.NotNull;
 
@@ -60,6 +77,77 @@ public class BotListener extends ListenerAdapter implements Consumer<String> {
         super.onDisconnect(event);
     }
 
+    @Override
+    public void onGuildLeave(@NotNull GuildLeaveEvent event) {
+        GuildIndex.remove(event.getGuild());
+        PermissionCache.remove(event.getGuild());
+        MemberRetriever.getInstance().remove(event.getGuild());
+    }
+
+    @Override
+    public void onGuildUpdateOwner(@NotNull GuildUpdateOwnerEvent event) {
+        PermissionCache.invalidate(event.getGuild());
+    }
+
+    @Override
+    public void onGuildMemberRoleAdd(@NotNull GuildMemberRoleAddEvent event) {
+        PermissionCache.invalidateMember(event.getGuild(), event.getUser());
+    }
+
+    @Override
+    public void onGuildMemberRoleRemove(@NotNull GuildMemberRoleRemoveEvent event) {
+        PermissionCache.invalidateMember(event.getGuild(), event.getUser());
+    }
+
+    @Override
+    public void onGuildMemberRemove(@NotNull GuildMemberRemoveEvent event) {
+        PermissionCache.removeMember(event.getGuild(), event.getUser());
+        MemberRetriever.getInstance().invalidate(event.getGuild(), event.getUser());
+    }
+
+    @Override
+    public void onRoleCreate(@NotNull RoleCreateEvent event) {
+        GuildIndex.invalidateRoles(event.getGuild());
+        PermissionCache.invalidate(event.getGuild());
+    }
+
+    @Override
+    public void onRoleDelete(@NotNull RoleDeleteEvent event) {
+        GuildIndex.invalidateRoles(event.getGuild());
+        PermissionCache.invalidate(event.getGuild());
+    }
+
+    @Override
+    public void onRoleUpdateName(@NotNull RoleUpdateNameEvent event) {
+        GuildIndex.invalidateRoles(event.getGuild());
+    }
+
+    @Override
+    public void onRoleUpdatePosition(@NotNull RoleUpdatePositionEvent event) {
+        GuildIndex.invalidateRoles(event.getGuild());
+        PermissionCache.invalidate(event.getGuild());
+    }
+
+    @Override
+    public void onVoiceChannelCreate(@NotNull VoiceChannelCreateEvent event) {
+        GuildIndex.invalidateVoiceChannels(event.getGuild());
+    }
+
+    @Override
+    public void onVoiceChannelDelete(@NotNull VoiceChannelDeleteEvent event) {
+        GuildIndex.invalidateVoiceChannels(event.getGuild());
+    }
+
+    @Override
+    public void onVoiceChannelUpdateName(@NotNull VoiceChannelUpdateNameEvent event) {
+        GuildIndex.invalidateVoiceChannels(event.getGuild());
+    }
+
+    @Override
+    public void onVoiceChannelUpdatePosition(@NotNull VoiceChannelUpdatePositionEvent event) {
+        GuildIndex.invalidateVoiceChannels(event.getGuild());
+    }
+
     public void setPinnedGuild(Guild pinnedGuild) {
         this.pinnedGuild = pinnedGuild;
     }
@@ -108,7 +196,7 @@ public class BotListener extends ListenerAdapter implements Consumer<String> {
         }
 
         // Load the corresponding member into the cache.
-        if (pinnedGuild.retrieveMember(pinnedSender).complete() == null) {
+        if (MemberRetriever.getInstance().complete(pinnedGuild, pinnedSender) == null) {
             Log.w("BotListener", "Failed to retrieve the member for the pinned sender.");
             return;
         }
@@ -119,7 +207,7 @@ public class BotListener extends ListenerAdapter implements Consumer<String> {
         }
 
         BotUtils.begin(pinnedGuild, pinnedSender, pinnedChannel);
-        CommandGroup[] groups = botInfo.getCommandGroups();
+        CommandGroup[] groups = botInfo.getCommandRouter().route(command);
         for (CommandGroup group : groups) {
             if (group.exec(
                     command,
@@ -151,22 +239,53 @@ public class BotListener extends ListenerAdapter implements Consumer<String> {
             return;
         }
 
-        BotUtils.begin(event);
         String messageText = event.getMessage().getContentRaw();
 
         BotInfo botInfo = bot.getInfo();
 
-        CommandGroup[] groups = botInfo.getCommandGroups();
-        for (CommandGroup group : groups) {
-            if (group.exec(
-                    messageText,
-                    event.getMessage().getMentionedUsers(),
-                    sender,
-                    false
-            )) {
-                break;
+        // most messages aren't commands, so reject those before doing any other work
+        CommandGroup[] groups = botInfo.getCommandRouter().route(messageText);
+        if (groups.length == 0) {
+            return;
+        }
+
+        CommandExecutor executor = botInfo.getCommandExecutor();
+        if (executor == null) {
+            dispatch(event, groups);
+        } else {
+            executor.submit(
+                    event.getGuild().getIdLong(),
+                    () -> dispatch(event, groups),
+                    () -> replyBusy(event)
+            );
+        }
+    }
+
+    private void replyBusy(MessageReceivedEvent event) {
+        // reply the same way commands do, so the reply is scheduled and merged like theirs
+        BotUtils.begin(event);
+        try {
+            BotUtils.getContext().sendMessage("I'm too busy right now, try again in a moment");
+        } finally {
+            BotUtils.end();
+        }
+    }
+
+    private void dispatch(MessageReceivedEvent event, CommandGroup[] groups) {
+        BotUtils.begin(event);
+        try {
+            for (CommandGroup group : groups) {
+                if (group.exec(
+                        event.getMessage().getContentRaw(),
+                        event.getMessage().getMentionedUsers(),
+                        event.getAuthor(),
+                        false
+                )) {
+                    break;
+                }
             }
+        } finally {
+            BotUtils.end();
         }
-        BotUtils.end();
     }
 }
@@ -1,6 +1,8 @@
 package com.ekkongames.jdacbl.bot;
 
 import com.ekkongames.jdacbl.audio.GuildVoiceController;
+import com.ekkongames.jdacbl.audio.TrackCache;
+import com.ekkongames.jdacbl.audio.YoutubeSearch;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import net.dv8tion.jda.api.entities.Guild;
 
@@ -17,11 +19,11 @@ public class GuildState {
     private final String guildId;
     private final GuildVoiceController voiceController;
 
-    public GuildState(String youtubeToken, AudioPlayerManager audioPlayerManager, Guild guild) {
+    public GuildState(YoutubeSearch youtubeSearch, TrackCache trackCache, AudioPlayerManager audioPlayerManager, Guild guild) {
         this.guild = guild;
         this.guildId = guild.getId();
 
-        this.voiceController = new GuildVoiceController(youtubeToken, audioPlayerManager, guild.getAudioManager());
+        this.voiceController = new GuildVoiceController(youtubeSearch, trackCache, audioPlayerManager, guild.getAudioManager());
     }
 
     public Guild getGuild() {
@@ -6,6 +6,7 @@ import com.ekkongames.jdacbl.commands.Command;
 import com.ekkongames.jdacbl.commands.CommandInfo;
 import com.ekkongames.jdacbl.commands.CommandInput;
 import com.ekkongames.jdacbl.utils.Log;
+import com.ekkongames.jdacbl.utils.MemberRetriever;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.User;
@@ -47,7 +48,7 @@ public class PinSenderCommand extends Command {
         }
 
         // Load the corresponding member into the cache.
-        if (pinnedGuild.retrieveMember(senderToPin).complete() == null) {
+        if (MemberRetriever.getInstance().complete(pinnedGuild, senderToPin) == null) {
             Log.w("PinSenderCommand", "Failed to retrieve the member for that user. Maybe they're in a different guild?");
             return;
         }
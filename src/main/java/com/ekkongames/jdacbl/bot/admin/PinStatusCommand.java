@@ -2,10 +2,11 @@ package com.ekkongames.jdacbl.bot.admin;
 
 import com.ekkongames.jdacbl.bot.BotListener;
 import com.ekkongames.jdacbl.commands.Command;
+import com.ekkongames.jdacbl.commands.CommandContext;
 import com.ekkongames.jdacbl.commands.CommandInfo;
 import com.ekkongames.jdacbl.commands.CommandInput;
-import com.ekkongames.jdacbl.utils.BotUtils;
 import com.ekkongames.jdacbl.utils.Log;
+import com.ekkongames.jdacbl.utils.MemberRetriever;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.MessageChannel;
@@ -25,7 +26,8 @@ public class PinStatusCommand extends Command {
     public void exec(CommandInput input) {
         StringBuilder messageBuilder = new StringBuilder();
 
-        if (BotUtils.getEvent() != null) {
+        CommandContext context = input.getContext();
+        if (context.getEvent() != null) {
             messageBuilder.append("```\n");
         }
 
@@ -48,10 +50,8 @@ public class PinStatusCommand extends Command {
             if (botListener.getPinnedGuild() == null) {
                 messageBuilder.append("null\n");
             } else {
-                Member pinnedMember = botListener
-                        .getPinnedGuild()
-                        .retrieveMember(botListener.getPinnedSender())
-                        .complete();
+                Member pinnedMember = MemberRetriever.getInstance()
+                        .complete(botListener.getPinnedGuild(), botListener.getPinnedSender());
                 if (pinnedMember == null) {
                     messageBuilder.append("null\n");
                 } else {
@@ -69,10 +69,10 @@ public class PinStatusCommand extends Command {
             messageBuilder.append("\n");
         }
 
-        if (BotUtils.getEvent() != null) {
+        if (context.getEvent() != null) {
             messageBuilder.append("```");
         }
 
-        BotUtils.sendPlainMessage(messageBuilder.toString());
+        context.sendPlainMessage(messageBuilder.toString());
     }
 }
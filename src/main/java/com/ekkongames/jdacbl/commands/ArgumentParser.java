@@ -0,0 +1,160 @@
+package com.ekkongames.jdacbl.commands;
+
+import com.ekkongames.jdacbl.utils.GuildIndex;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+
+/**
+ * Checks and converts the arguments a command declared in its {@link CommandInfo}. Parsers are
+ * compiled once, when the command's group is built.
+ */
+final class ArgumentParser {
+
+    private final CommandInfo commandInfo;
+    private final CommandInfo.Argument[] arguments;
+    private final int requiredCount;
+
+    private ArgumentParser(CommandInfo commandInfo) {
+        this.commandInfo = commandInfo;
+        this.arguments = commandInfo.getArguments();
+
+        int requiredCount = 0;
+        while (requiredCount < arguments.length && !arguments[requiredCount].isOptional()) {
+            requiredCount++;
+        }
+        this.requiredCount = requiredCount;
+    }
+
+    /**
+     * @param commandInfo the command to parse arguments for
+     * @return a parser for the command's arguments, or null if it didn't declare any
+     */
+    static ArgumentParser compile(CommandInfo commandInfo) {
+        if (commandInfo.getArguments().length == 0) {
+            return null;
+        }
+        return new ArgumentParser(commandInfo);
+    }
+
+    /**
+     * Converts the arguments following the command name.
+     *
+     * @param input the input, starting with the command name
+     * @return the converted arguments
+     * @throws InvalidArgumentException if an argument is missing or can't be converted
+     */
+    CommandArguments parse(CommandInput input) throws InvalidArgumentException {
+        // only as many tokens as there are arguments are looked at
+        int count = 0;
+        while (count < arguments.length && input.hasToken(count + 1)) {
+            count++;
+        }
+        if (count < requiredCount) {
+            throw new InvalidArgumentException(
+                    "Missing " + arguments[count].getName() + ". Usage: " + commandInfo.getNames()[0] + " " + commandInfo.getUsage()
+            );
+        }
+
+        CommandArguments result = new CommandArguments(arguments, count);
+        for (int i = 0; i < count; i++) {
+            CommandInfo.Argument argument = arguments[i];
+            String token = input.getToken(i + 1);
+            if (!convert(input.getContext().getGuild(), argument.getType(), token, result, i)) {
+                throw new InvalidArgumentException(
+                        "Expected " + argument.getType().getDescription() + " for " + argument.getName()
+                                + ", but got \"" + token + "\""
+                );
+            }
+        }
+        return result;
+    }
+
+    private static boolean convert(Guild guild, ArgumentType type, String token, CommandArguments result, int index) {
+        switch (type) {
+            case INTEGER:
+                try {
+                    result.setNumber(index, Integer.parseInt(token));
+                    return true;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            case SNOWFLAKE: {
+                long id = parseSnowflake(token, 0, token.length());
+                result.setNumber(index, id);
+                return id >= 0;
+            }
+            case USER: {
+                long id = parseMention(token, "<@", "<@!");
+                Member member = (guild == null || id < 0) ? null : guild.getMemberById(id);
+                result.setObject(index, member == null ? null : member.getUser());
+                return member != null;
+            }
+            case ROLE: {
+                if (guild == null) {
+                    return false;
+                }
+                long id = parseMention(token, "<@&", null);
+                Role role = id >= 0 ? guild.getRoleById(id) : null;
+                if (role == null) {
+                    role = GuildIndex.getRoleByName(guild, token);
+                }
+                result.setObject(index, role);
+                return role != null;
+            }
+            case STRING:
+                result.setObject(index, token);
+                return true;
+            default:
+                throw new IllegalStateException("Unknown argument type " + type);
+        }
+    }
+
+    /**
+     * Parses an ID on its own, or a mention with one of the specified prefixes.
+     *
+     * @return the ID, or -1 if the token isn't an ID or mention
+     */
+    private static long parseMention(String token, String prefix, String alternatePrefix) {
+        if (token.endsWith(">")) {
+            int end = token.length() - 1;
+            if (alternatePrefix != null && token.startsWith(alternatePrefix)) {
+                return parseSnowflake(token, alternatePrefix.length(), end);
+            }
+            if (token.startsWith(prefix)) {
+                return parseSnowflake(token, prefix.length(), end);
+            }
+            return -1;
+        }
+        return parseSnowflake(token, 0, token.length());
+    }
+
+    /**
+     * @return the ID, or -1 if the characters aren't a valid ID
+     */
+    private static long parseSnowflake(String token, int start, int end) {
+        if (start == end) {
+            return -1;
+        }
+
+        long id = 0;
+        for (int i = start; i < end; i++) {
+            char c = token.charAt(i);
+            if (c < '0' || c > '9' || id > (Long.MAX_VALUE - (c - '0')) / 10) {
+                return -1;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+
+    /**
+     * Thrown when the input doesn't match the arguments declared by a command.
+     */
+    static final class InvalidArgumentException extends Exception {
+        InvalidArgumentException(String message) {
+            // the message is all that's needed, so skip the stack trace
+            super(message, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.ekkongames.jdacbl.commands;
+
+/**
+ * The types of arguments a command can declare with {@link CommandInfo.Builder#argument}.
+ */
+public enum ArgumentType {
+
+    /**
+     * A whole number that fits in an int.
+     */
+    INTEGER("a number"),
+
+    /**
+     * A Discord ID.
+     */
+    SNOWFLAKE("an ID"),
+
+    /**
+     * A member of the current guild, given as a mention or an ID.
+     */
+    USER("a user"),
+
+    /**
+     * A role in the current guild, given as a mention, an ID or its exact name.
+     */
+    ROLE("a role"),
+
+    /**
+     * A single token; use quotes to include spaces.
+     */
+    STRING("some text");
+
+    private final String description;
+
+    ArgumentType(String description) {
+        this.description = description;
+    }
+
+    /**
+     * @return a description of the expected input, for use in error messages
+     */
+    public String getDescription() {
+        return description;
+    }
+}
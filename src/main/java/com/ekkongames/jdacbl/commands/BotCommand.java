@@ -0,0 +1,54 @@
+package com.ekkongames.jdacbl.commands;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Registers a command at compile time. For each package containing annotated commands, a class
+ * named {@code BotCommands} is generated that adds them to a {@link CommandGroup.Builder}:
+ * <pre>{@code
+ * CommandGroup commands = BotCommands.addTo(new CommandGroup.Builder()).build();
+ * }</pre>
+ * The annotated class must extend {@link Command} and have a non-private constructor taking
+ * only a {@link CommandInfo}, which is built from the values of this annotation.
+ *
+ * @see CommandInfo.Builder
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface BotCommand {
+
+    /**
+     * @return the names the command can be invoked with, the first being its main name
+     */
+    String[] names();
+
+    /**
+     * @return a short summary of the command, shown in the general help text
+     */
+    String summary() default "";
+
+    /**
+     * @return a longer description of the command, shown when asking for help with it
+     */
+    String description() default "";
+
+    /**
+     * @return the arguments the command takes
+     */
+    String usage() default "";
+
+    /**
+     * @return whether the command is shown in the help text
+     */
+    boolean visible() default true;
+
+    /**
+     * @return the role required to use the command, or an empty string if anyone can use it
+     */
+    String auth() default "";
+}
@@ -1,5 +1,7 @@
 package com.ekkongames.jdacbl.commands;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  *
  * @author Julian Dominguez-Schatz <jfdoming at ekkon.dx.am>
@@ -33,6 +35,21 @@ public abstract class Command {
 
     public abstract void exec(CommandInput input);
 
+    /**
+     * Runs the command, possibly finishing after this method returns. By default this runs
+     * {@link #exec(CommandInput)} and returns a completed future. Commands that wait on other
+     * services can override this so they don't hold up a command thread while waiting; note that
+     * {@link com.ekkongames.jdacbl.utils.BotUtils} is only bound until this method returns, so
+     * use {@link CommandInput#getContext()} to reply afterwards.
+     *
+     * @param input the input to the command
+     * @return a future completed when the command is done
+     */
+    public CompletableFuture<Void> execAsync(CommandInput input) {
+        exec(input);
+        return CompletableFuture.completedFuture(null);
+    }
+
     /**
      * Called when the bot is logged in, to initialize any resources used while logged in.
      */
@@ -0,0 +1,81 @@
+package com.ekkongames.jdacbl.commands;
+
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.entities.User;
+
+/**
+ * The arguments of a command, already converted to the types the command declared.
+ */
+public final class CommandArguments {
+
+    static final CommandArguments EMPTY = new CommandArguments(new CommandInfo.Argument[0], 0);
+
+    private final CommandInfo.Argument[] declared;
+    private final int count;
+
+    // numbers are stored unboxed, everything else as objects
+    private final long[] numbers;
+    private final Object[] objects;
+
+    CommandArguments(CommandInfo.Argument[] declared, int count) {
+        this.declared = declared;
+        this.count = count;
+        this.numbers = new long[count];
+        this.objects = new Object[count];
+    }
+
+    void setNumber(int index, long value) {
+        numbers[index] = value;
+    }
+
+    void setObject(int index, Object value) {
+        objects[index] = value;
+    }
+
+    /**
+     * @return the number of arguments given, including optional arguments
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param index the index of the argument
+     * @return whether the argument was given
+     */
+    public boolean has(int index) {
+        return index >= 0 && index < count;
+    }
+
+    public int getInt(int index) {
+        return (int) numbers[checkType(index, ArgumentType.INTEGER)];
+    }
+
+    public long getSnowflake(int index) {
+        return numbers[checkType(index, ArgumentType.SNOWFLAKE)];
+    }
+
+    public User getUser(int index) {
+        return (User) objects[checkType(index, ArgumentType.USER)];
+    }
+
+    public Role getRole(int index) {
+        return (Role) objects[checkType(index, ArgumentType.ROLE)];
+    }
+
+    public String getString(int index) {
+        return (String) objects[checkType(index, ArgumentType.STRING)];
+    }
+
+    private int checkType(int index, ArgumentType type) {
+        if (!has(index)) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+        if (declared[index].getType() != type) {
+            throw new IllegalArgumentException(
+                    "Argument " + declared[index].getName() + " is of type " + declared[index].getType() + ", not " + type
+            );
+        }
+        return index;
+    }
+}
@@ -0,0 +1,20 @@
+package com.ekkongames.jdacbl.commands;
+
+/**
+ * A command that only passes the rest of its input on to a group of subcommands. Branches are
+ * flattened into the {@link CommandTree} of the group they belong to, so a chain of subcommands
+ * is resolved in a single walk instead of by each group in turn.
+ */
+public class CommandBranch extends Command {
+
+    public CommandBranch(CommandInfo commandInfo, CommandGroup children) {
+        super(commandInfo, children);
+    }
+
+    @Override
+    public final void exec(CommandInput input) {
+        CommandInput rest = new CommandInput(input);
+        rest.discardToken(0);
+        children.exec(rest);
+    }
+}
@@ -0,0 +1,431 @@
+package com.ekkongames.jdacbl.commands;
+
+import com.ekkongames.jdacbl.utils.Log;
+import com.ekkongames.jdacbl.utils.GuildIndex;
+import com.ekkongames.jdacbl.utils.PermissionCache;
+import com.ekkongames.jdacbl.utils.PrimitiveUtils;
+import com.ekkongames.jdacbl.utils.RestScheduler;
+import net.dv8tion.jda.api.entities.*;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.requests.RestAction;
+
+import java.awt.Color;
+import java.util.function.BiFunction;
+
+/**
+ * The message a command is handling: where it was sent and who sent it. A context never changes,
+ * so it can be used from any thread, including after {@link Command#execAsync(CommandInput)} returns.
+ * It is available from {@link CommandInput#getContext()}.
+ */
+public final class CommandContext {
+
+    /**
+     * The context of a command not handling any message. Replies are written to the log.
+     */
+    public static final CommandContext NONE = new CommandContext(null, null, null, null, null, RestScheduler.Priority.BACKGROUND);
+
+    private final MessageReceivedEvent event;
+    private final Guild guild;
+    private final Member self;
+    private final User author;
+    // resolved when first needed; a String is safe to publish without synchronization
+    private String authorMention;
+    private final MessageChannel channel;
+    // the priority of requests other than replies
+    private final RestScheduler.Priority restPriority;
+
+    private CommandContext(MessageReceivedEvent event, Guild guild, User author, MessageChannel channel,
+                           String authorMention, RestScheduler.Priority restPriority) {
+        this.event = event;
+        this.guild = guild;
+        this.self = guild == null ? null : guild.getSelfMember();
+        this.author = author;
+        this.authorMention = authorMention;
+        this.channel = channel;
+        this.restPriority = restPriority;
+    }
+
+    /**
+     * @param event the event being handled
+     * @param guild the guild to run the command in, usually the guild of the event
+     */
+    public CommandContext(MessageReceivedEvent event, Guild guild) {
+        this(event, guild, event.getAuthor(), event.getChannel(), null, RestScheduler.Priority.BACKGROUND);
+    }
+
+    /**
+     * Creates a context for a command that doesn't come from a message, such as one typed in the console.
+     *
+     * @param guild   the guild to run the command in
+     * @param author  the user to run the command as
+     * @param channel the channel to reply in
+     */
+    public CommandContext(Guild guild, User author, MessageChannel channel) {
+        this(null, guild, author, channel, null, RestScheduler.Priority.BACKGROUND);
+    }
+
+    /**
+     * Gets a copy of this context whose requests, other than replies, have the specified priority.
+     * Replies are always {@link RestScheduler.Priority#INTERACTIVE}; other requests default to
+     * {@link RestScheduler.Priority#BACKGROUND}. Commands changing many members at once should use
+     * {@link RestScheduler.Priority#BULK}, so that they don't delay replies.
+     *
+     * @param restPriority the priority of requests such as changing roles and nicknames
+     * @return a context with the specified priority
+     * @see CommandInfo.Builder#restPriority(RestScheduler.Priority)
+     */
+    public CommandContext withRestPriority(RestScheduler.Priority restPriority) {
+        return new CommandContext(event, guild, author, channel, authorMention, restPriority);
+    }
+
+    /**
+     * @return the priority of requests made through this context, other than replies
+     */
+    public RestScheduler.Priority getRestPriority() {
+        return restPriority;
+    }
+
+    /**
+     * Hands a request to the {@link RestScheduler}, replying with a message if it fails.
+     */
+    private <T> void schedule(String route, RestAction<T> action, String failureMessage) {
+        RestScheduler.getInstance().submit(restPriority, route, action)
+                .whenComplete((T result, Throwable t) -> {
+                    if (t != null) {
+                        sendMessage(failureMessage);
+                    }
+                });
+    }
+
+    /**
+     * @return the event being handled, or null if the command doesn't come from a message
+     */
+    public MessageReceivedEvent getEvent() {
+        return event;
+    }
+
+    /**
+     * @return the guild the command runs in
+     */
+    public Guild getGuild() {
+        return guild;
+    }
+
+    /**
+     * @return the member representing the bot user on the guild
+     */
+    public Member getSelf() {
+        return self;
+    }
+
+    /**
+     * @return the user who sent the message
+     */
+    public User getAuthor() {
+        return author;
+    }
+
+    /**
+     * @return a String representing a mention of the user who sent the message, or null if the
+     * command doesn't come from a message
+     */
+    public String getAuthorMention() {
+        if (event == null) {
+            return null;
+        }
+
+        String mention = authorMention;
+        if (mention == null) {
+            mention = resolveAuthorMention();
+            authorMention = mention;
+        }
+        return mention;
+    }
+
+    private String resolveAuthorMention() {
+        // the event usually carries the member already, unless the guild is pinned to another one
+        Member member = event.getMember();
+        if (member == null || member.getGuild().getIdLong() != guild.getIdLong()) {
+            member = guild.getMember(author);
+        }
+
+        // a user mention works just as well if the member isn't cached, without asking Discord
+        return member != null ? member.getAsMention() : author.getAsMention();
+    }
+
+    /**
+     * @return a MessageChannel representing the channel the message was sent in
+     */
+    public MessageChannel getMessageChannel() {
+        return channel;
+    }
+
+    /**
+     * @param target     the user who sent the command
+     * @param roleString a String representing the role to check for
+     * @return whether the user has permissions higher or equal to the provided role
+     */
+    public boolean checkPermission(User target, String roleString) {
+        Role role = GuildIndex.getRoleByName(guild, roleString);
+        if (role == null) {
+            return false;
+        }
+
+        return PermissionCache.hasPermission(guild, target, role);
+    }
+
+    private boolean canInteractWith(Member target) {
+        if (!self.canInteract(target)) {
+            sendMessage("I don't have permission to modify the user " + target.getAsMention());
+            return false;
+        }
+        return true;
+    }
+
+    private boolean modifyTargetRoles(User targetUser, String roleString, BiFunction<Member, Role, RestAction<Void>> consumer) {
+        Member target = guild.getMember(targetUser);
+
+        if (!canInteractWith(target)) {
+            return false;
+        }
+
+        Role role = GuildIndex.getRoleByName(guild, roleString);
+        if (role == null) {
+            sendMessage("The role \"" + roleString + "\" doesn't exist");
+            return false;
+        }
+
+        schedule(
+                "roles:" + guild.getId(),
+                consumer.apply(target, role),
+                "Failed to modify roles of the user " + target.getAsMention()
+        );
+        return true;
+    }
+
+    public User getTargetUser(CommandInput input, int index) {
+        // make sure the user specified a valid target
+        User target = PrimitiveUtils.get(input.getMentionedUsers());
+        if (target == null) {
+            try {
+                long targetID = Long.parseLong(input.getToken(index));
+                Member member = guild.getMemberById(targetID);
+
+                if (member == null) {
+                    return null;
+                }
+                return member.getUser();
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Adds the specified role to the target user.
+     *
+     * @param targetUser the user to add the role to
+     * @param roleString the role to add
+     * @return whether the role was successfully added to the user
+     */
+    public boolean addRoleToUser(User targetUser, String roleString) {
+        return modifyTargetRoles(
+                targetUser,
+                roleString,
+                (target, role) -> guild.addRoleToMember(target, role)
+        );
+    }
+
+    /**
+     * Removes the specified role from the target user.
+     *
+     * @param targetUser the user to remove the role from
+     * @param roleString the role to remove
+     * @return whether the role was successfully removed from the user
+     */
+    public boolean removeRoleFromUser(User targetUser, String roleString) {
+        return modifyTargetRoles(
+                targetUser,
+                roleString,
+                (target, role) -> guild.removeRoleFromMember(target, role)
+        );
+    }
+
+    /**
+     * Modify the target role to change its @mentionable status.
+     *
+     * @param roleString  the role to modify
+     * @param mentionable whether the specified role should be @mentionable
+     * @return whether the role was successfully modified
+     */
+    public boolean setRoleMentionable(String roleString, boolean mentionable) {
+        Role role = GuildIndex.getRoleByName(guild, roleString);
+        if (role == null) {
+            sendMessage("The role \"" + roleString + "\" doesn't exist");
+            return false;
+        }
+
+        schedule(
+                "role:" + role.getId(),
+                role.getManager().setMentionable(mentionable),
+                "Failed to modify the role " + roleString
+        );
+        return true;
+    }
+
+    /**
+     * Modify the target role to change its colour.
+     *
+     * @param roleString the role to modify
+     * @param colour     the new colour of the role
+     * @return whether the role was successfully modified
+     */
+    public boolean setRoleColour(String roleString, Color colour) {
+        Role role = GuildIndex.getRoleByName(guild, roleString);
+        if (role == null) {
+            sendMessage("The role \"" + roleString + "\" doesn't exist");
+            return false;
+        }
+
+        schedule(
+                "role:" + role.getId(),
+                role.getManager().setColor(colour),
+                "Failed to modify the role " + roleString
+        );
+
+        return true;
+    }
+
+    /**
+     * Modify the target role to change its name.
+     *
+     * @param roleString    the role to modify
+     * @param newRoleString the new name of the role
+     * @return whether the role was successfully modified
+     */
+    public boolean setRoleName(String roleString, String newRoleString) {
+        Role role = GuildIndex.getRoleByName(guild, roleString);
+        if (role == null) {
+            sendMessage("The role \"" + roleString + "\" doesn't exist");
+            return false;
+        }
+
+        schedule(
+                "role:" + role.getId(),
+                role.getManager().setName(newRoleString),
+                "Failed to modify the role " + roleString
+        );
+
+        return true;
+    }
+
+    /**
+     * @param roleString the name of the role to create
+     * @return whether the role was successfully created
+     */
+    public boolean makeRole(String roleString) {
+        schedule(
+                "roles:" + guild.getId(),
+                guild.createRole().setName(roleString),
+                "Failed to create the role " + roleString
+        );
+        return true;
+    }
+
+    /**
+     * Moves the target user to the specified voice channel.
+     *
+     * @param targetUser  the user to move
+     * @param channelName the voice channel to move the user to
+     * @return whether the user was sucessfully moved
+     */
+    public boolean moveUserToVoiceChannel(User targetUser, String channelName) {
+        // determine the channel to move the target to
+        VoiceChannel vChannel = GuildIndex.getVoiceChannelByName(guild, channelName);
+        if (vChannel == null) {
+            sendMessage("The voice channel \"" + channelName + "\" doesn't exist");
+            return false;
+        }
+
+        // move the target to the new voice channel
+        try {
+            schedule(
+                    "voice:" + guild.getId(),
+                    guild.moveVoiceMember(guild.getMember(targetUser), vChannel),
+                    "Failed to move the user " + targetUser.getAsMention()
+            );
+        } catch (IllegalStateException e) {
+            sendMessage("You cannot move a user who isn't in a voice channel");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sets the nickname for the target user in the current server.
+     *
+     * @param targetUser the user to change the nickname of
+     * @param nickname   the nickname to use
+     * @return whether the user's nickname was successfully changed
+     */
+    public boolean setUserNickname(User targetUser, String nickname) {
+        if (targetUser == null) {
+            Log.d("CommandContext:setUserNickname", "NPE");
+            return false;
+        }
+
+        Member targetMember = guild.getMember(targetUser);
+        if (!self.canInteract(targetMember)) {
+            sendMessage("You do not have permission to change the nickname of someone with higher privileges than yourself");
+            return false;
+        }
+
+        schedule(
+                "members:" + guild.getId(),
+                targetMember.modifyNickname(nickname),
+                "Failed to modify the nickname of the user " + targetUser.getAsMention()
+        );
+        return true;
+    }
+
+    /**
+     * Posts a message in the channel of the event. The message will contain an @mention
+     * for the author of the trigger message.
+     *
+     * @param message the message to send
+     */
+    public void sendMessage(String message) {
+        String authorMention = getAuthorMention();
+        if (event == null) {
+            Log.i("Bot", message + "!");
+        } else if (authorMention == null) {
+            sendPlainMessage(message + "!");
+        } else {
+            sendPlainMessage(message + ", " + authorMention + "!");
+        }
+    }
+
+    /**
+     * Posts a message in the channel of the event. Messages sent in quick succession are merged,
+     * up to Discord's length limit, and sent together when the command finishes or shortly after.
+     *
+     * @param message the message to send
+     */
+    public void sendPlainMessage(String message) {
+        if (channel != null) {
+            MessageCoalescer.send(channel, message);
+        } else {
+            Log.i("Bot", message);
+        }
+    }
+
+    /**
+     * Sends any messages still waiting to be merged with later ones.
+     */
+    public void flush() {
+        if (channel != null) {
+            MessageCoalescer.flush(channel);
+        }
+    }
+}
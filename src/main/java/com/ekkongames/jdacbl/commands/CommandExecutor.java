@@ -0,0 +1,437 @@
+package com.ekkongames.jdacbl.commands;
+
+import com.ekkongames.jdacbl.utils.Log;
+import com.ekkongames.jdacbl.utils.VirtualThreads;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs commands on a fixed number of threads rather than on JDA's event thread, so that a slow
+ * command doesn't hold up every other event. Messages wait in a bounded queue; once it is full,
+ * the {@link RejectionPolicy} decides what happens to new messages.
+ * <p>
+ * If commands are {@linkplain Builder#setOrderedByGuild(boolean) ordered by guild}, each thread
+ * gets a lane with its own queue, and every guild is assigned to one lane. Messages from the same
+ * guild are then handled one at a time in the order they arrived, while different guilds still
+ * run in parallel.
+ * <p>
+ * With {@linkplain Builder#setVirtualThreads(boolean) virtual threads}, commands that block on
+ * Discord's API don't tie up a platform thread. Unless commands are ordered by guild, each message
+ * then gets its own virtual thread, so messages never wait in a queue; instead, the number of
+ * messages handled at once is limited to the thread count plus the queue capacity.
+ */
+public final class CommandExecutor {
+
+    private static final String TAG = "CommandExecutor";
+
+    /**
+     * What to do with a message when the queue is full.
+     */
+    public enum RejectionPolicy {
+        /**
+         * Drop the message and tell the sender to try again later.
+         */
+        REPLY_BUSY,
+        /**
+         * Drop the message without a reply.
+         */
+        DISCARD,
+        /**
+         * Run the command on the thread that received the message, which stops JDA from reading
+         * further events until the queue has room.
+         */
+        RUN_ON_CALLER
+    }
+
+    // a single executor shared by all guilds, or one single-threaded executor per lane
+    private final ThreadPoolExecutor[] lanes;
+
+    // with virtual threads and no lanes, a thread per message, limited by the permits
+    private final ExecutorService perMessage;
+    private final Semaphore permits;
+    private final int maxMessages;
+    private final ScheduledExecutorService timer;
+    private final RejectionPolicy rejectionPolicy;
+    private final long timeoutMillis;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong timedOutCount = new AtomicLong();
+
+    private CommandExecutor(Builder builder) {
+        ThreadFactory threadFactory = null;
+        if (builder.virtualThreads) {
+            threadFactory = VirtualThreads.newThreadFactory("Command-Worker-");
+            if (threadFactory == null) {
+                Log.w(TAG, "Virtual threads aren't supported by this JDK, using platform threads instead");
+            }
+        }
+
+        if (threadFactory != null && !builder.orderedByGuild) {
+            this.lanes = new ThreadPoolExecutor[0];
+            this.perMessage = VirtualThreads.newThreadPerTaskExecutor("Command-Worker-");
+            this.maxMessages = builder.threads + builder.queueCapacity;
+            this.permits = new Semaphore(maxMessages);
+        } else {
+            if (threadFactory == null) {
+                threadFactory = new DaemonThreadFactory("Command-Worker-");
+            }
+
+            if (builder.orderedByGuild) {
+                this.lanes = new ThreadPoolExecutor[builder.threads];
+                for (int i = 0; i < lanes.length; i++) {
+                    lanes[i] = createExecutor(1, builder.queueCapacity, threadFactory);
+                }
+            } else {
+                this.lanes = new ThreadPoolExecutor[]{
+                        createExecutor(builder.threads, builder.queueCapacity, threadFactory)
+                };
+            }
+            this.perMessage = null;
+            this.maxMessages = 0;
+            this.permits = null;
+        }
+        this.timer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("Command-Timer-"));
+        this.rejectionPolicy = builder.rejectionPolicy;
+        this.timeoutMillis = builder.timeoutMillis;
+    }
+
+    private static ThreadPoolExecutor createExecutor(int threads, int queueCapacity, ThreadFactory threadFactory) {
+        return new ThreadPoolExecutor(
+                threads,
+                threads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    /**
+     * Queues the handling of a message.
+     *
+     * @param guildId the ID of the guild the message was sent in
+     * @param task    the task handling the message
+     * @param onBusy  called on this thread if the message was dropped with {@link RejectionPolicy#REPLY_BUSY}
+     */
+    public void submit(long guildId, Runnable task, Runnable onBusy) {
+        int lane = getLane(guildId);
+        ExecutorService executor = perMessage != null ? perMessage : lanes[lane];
+        try {
+            execute(executor, task);
+            return;
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+        }
+
+        if (executor.isShutdown()) {
+            Log.d(TAG, "Dropped a command after shutdown");
+            return;
+        }
+
+        switch (rejectionPolicy) {
+            case REPLY_BUSY:
+                Log.w(TAG, "Command queue of lane " + lane + " is full, dropping a command from guild " + guildId);
+                onBusy.run();
+                break;
+            case DISCARD:
+                Log.w(TAG, "Command queue of lane " + lane + " is full, dropping a command from guild " + guildId);
+                break;
+            case RUN_ON_CALLER:
+                task.run();
+                break;
+        }
+    }
+
+    private void execute(ExecutorService executor, Runnable task) {
+        if (permits == null) {
+            executor.execute(task);
+            return;
+        }
+
+        if (!permits.tryAcquire()) {
+            throw new RejectedExecutionException();
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @param guildId the ID of a guild
+     * @return the lane the guild's messages are handled in, or 0 if commands aren't ordered by guild
+     */
+    public int getLane(long guildId) {
+        if (lanes.length <= 1) {
+            return 0;
+        }
+
+        // IDs from the same time differ mostly in their low bits, so mix them before picking a lane
+        long hash = guildId * 0x9E3779B97F4A7C15L;
+        return (int) ((hash >>> 32) % lanes.length);
+    }
+
+    /**
+     * Runs a command on the current thread, and watches it until it completes or times out.
+     */
+    void run(Command command, CommandInput input) {
+        long timeout = command.getCommandInfo().getTimeout();
+        if (timeout <= 0) {
+            timeout = timeoutMillis;
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<Void> result;
+        try {
+            result = command.execAsync(input);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Command " + command + " failed", e);
+            return;
+        }
+
+        if (timeout > 0) {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (!result.isDone()) {
+                // the command finishes later, so give up on it once it runs out of time
+                long limit = timeout;
+                ScheduledFuture<?> check = timer.schedule(() -> {
+                    if (result.completeExceptionally(new TimeoutException())) {
+                        timedOutCount.incrementAndGet();
+                        Log.w(TAG, "Command " + command + " timed out after " + limit + "ms");
+                    }
+                }, Math.max(0, timeout - elapsed), TimeUnit.MILLISECONDS);
+                result.whenComplete((ignored, t) -> check.cancel(false));
+            } else if (elapsed > timeout) {
+                // a command blocking its thread can't be stopped safely, so only report it
+                timedOutCount.incrementAndGet();
+                Log.w(TAG, "Command " + command + " took " + elapsed + "ms, more than its timeout of " + timeout + "ms");
+            }
+        }
+
+        logFailure(command, result);
+    }
+
+    /**
+     * Runs a command on the current thread without an executor, as when commands aren't run asynchronously.
+     */
+    static void runInline(Command command, CommandInput input) {
+        logFailure(command, command.execAsync(input));
+    }
+
+    private static void logFailure(Command command, CompletableFuture<Void> result) {
+        result.whenComplete((ignored, t) -> {
+            Throwable cause = (t instanceof CompletionException && t.getCause() != null) ? t.getCause() : t;
+            if (cause != null && !(cause instanceof TimeoutException)) {
+                Log.e(TAG, "Command " + command + " failed", cause);
+            }
+        });
+    }
+
+    /**
+     * Stops accepting messages. Messages that were already queued are still handled.
+     */
+    public void shutdown() {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        if (perMessage != null) {
+            perMessage.shutdown();
+        }
+        timer.shutdown();
+    }
+
+    /**
+     * @return the number of messages waiting for a thread
+     */
+    public int getQueueSize() {
+        int size = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            size += lane.getQueue().size();
+        }
+        return size;
+    }
+
+    /**
+     * Gets the number of messages waiting in each lane. A lane with a much longer queue than the
+     * others usually holds a busy guild, which can be found with {@link #getLane(long)}.
+     *
+     * @return the number of messages waiting in each lane, which is empty if each message gets its own thread
+     */
+    public int[] getLaneQueueSizes() {
+        int[] sizes = new int[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            sizes[i] = lanes[i].getQueue().size();
+        }
+        return sizes;
+    }
+
+    /**
+     * @return the number of threads currently running commands
+     */
+    public int getActiveCount() {
+        int count = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            count += lane.getActiveCount();
+        }
+        if (permits != null) {
+            count += maxMessages - permits.availablePermits();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of messages that found the queue full
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return the number of commands that ran out of time
+     */
+    public long getTimedOutCount() {
+        return timedOutCount.get();
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    public static final class Builder {
+
+        private int threads;
+        private int queueCapacity;
+        private RejectionPolicy rejectionPolicy;
+        private long timeoutMillis;
+        private boolean orderedByGuild;
+        private boolean virtualThreads;
+
+        public Builder() {
+            threads = Runtime.getRuntime().availableProcessors();
+            queueCapacity = 256;
+            rejectionPolicy = RejectionPolicy.REPLY_BUSY;
+            timeoutMillis = 0;
+            orderedByGuild = false;
+            virtualThreads = VirtualThreads.isRequested();
+        }
+
+        /**
+         * Sets the number of commands that can run at once.
+         *
+         * @param threads the number of threads to run commands on
+         * @return the builder for method call chaining
+         */
+        public Builder setThreads(int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("At least one thread is required!");
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Sets the number of messages that can wait for a thread before the rejection policy applies.
+         * If commands are ordered by guild, this is the capacity of each lane.
+         *
+         * @param queueCapacity the maximum number of waiting messages
+         * @return the builder for method call chaining
+         */
+        public Builder setQueueCapacity(int queueCapacity) {
+            if (queueCapacity < 1) {
+                throw new IllegalArgumentException("The queue must hold at least one message!");
+            }
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Sets what happens to messages received while the queue is full. Note that
+         * {@link RejectionPolicy#RUN_ON_CALLER} can run a command ahead of others from its guild.
+         *
+         * @param rejectionPolicy the policy to use
+         * @return the builder for method call chaining
+         */
+        public Builder setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+            this.rejectionPolicy = rejectionPolicy;
+            return this;
+        }
+
+        /**
+         * Sets how long commands may run, unless a command sets its own timeout.
+         *
+         * @param timeout the timeout, or 0 for none
+         * @param unit    the unit of the timeout
+         * @return the builder for method call chaining
+         * @see CommandInfo.Builder#timeout(long, TimeUnit)
+         */
+        public Builder setTimeout(long timeout, TimeUnit unit) {
+            this.timeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * Sets whether messages from the same guild are handled one at a time, in the order they
+         * arrived. This keeps commands such as queueing and skipping music in sequence, while
+         * different guilds are still handled in parallel.
+         *
+         * @param orderedByGuild whether to order commands by guild
+         * @return the builder for method call chaining
+         */
+        public Builder setOrderedByGuild(boolean orderedByGuild) {
+            this.orderedByGuild = orderedByGuild;
+            return this;
+        }
+
+        /**
+         * Sets whether commands run on virtual threads, which needs Java 21 or later. Platform
+         * threads are used if the JDK doesn't support virtual threads. Defaults to the value of
+         * the {@value VirtualThreads#PROPERTY} system property.
+         *
+         * @param virtualThreads whether to run commands on virtual threads
+         * @return the builder for method call chaining
+         */
+        public Builder setVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        public CommandExecutor build() {
+            return new CommandExecutor(this);
+        }
+    }
+}
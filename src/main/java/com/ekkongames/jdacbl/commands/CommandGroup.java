@@ -2,14 +2,14 @@ package com.ekkongames.jdacbl.commands;
 
 import com.ekkongames.jdacbl.bot.Bot;
 import com.ekkongames.jdacbl.utils.BotUtils;
+import com.ekkongames.jdacbl.utils.RestScheduler;
 import net.dv8tion.jda.api.entities.User;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -20,6 +20,9 @@ public class CommandGroup {
 
     private Command[] commands;
 
+    // the commands of this group and all nested groups, compiled for dispatch
+    private CommandTree commandTree;
+
     // data cached for use in the help command
     private List<Command> visibleCommands;
     private final boolean containsAuthCommands;
@@ -27,22 +30,23 @@ public class CommandGroup {
     private final int longestAuthRole;
     private final String commandPrefix;
 
+    // null unless the group suggests names for unknown commands
+    private final CommandSuggestions suggestions;
+
+    // the characters a message handled by this group can start with, or null for any character
+    private final char[] leadingCharacters;
+
     private Bot bot;
 
     private CommandGroup(Builder builder) {
         // store a sorted list of all commands
         this.commands = builder.commands.toArray(new Command[0]);
 
+        // compile the commands so that dispatch doesn't need to scan them, or recurse into subcommands
+        this.commandTree = new CommandTree(this, commands, builder.table);
+
         // store a sorted list of visible commands
-        visibleCommands = Collections.unmodifiableList(
-                builder.commands.parallelStream()
-                        .filter((Command s) -> s.getCommandInfo().isVisible())
-                        .sorted(
-                                Comparator.comparing((Command c) -> c.getCommandInfo().getAuthenticationRole())
-                                        .thenComparing(Command::toString)
-                        )
-                        .collect(Collectors.toList())
-        );
+        visibleCommands = Collections.unmodifiableList(sortVisibleCommands(commands, builder.table));
 
         // determine if there are any commands that require authentication
         longestAuthRole = visibleCommands.stream()
@@ -52,15 +56,68 @@ public class CommandGroup {
         containsAuthCommands = (longestAuthRole > 0);
         commandPrefix = builder.commandPrefix;
         requestSilent = builder.requestSilent;
+        leadingCharacters = findLeadingCharacters();
+
+        // only suggest commands that are listed in the help text
+        List<String> visibleNames = new ArrayList<>();
+        for (Command command : visibleCommands) {
+            visibleNames.addAll(Arrays.asList(command.getCommandInfo().getNames()));
+        }
+        suggestions = builder.suggestCommands ? CommandSuggestions.build(visibleNames) : null;
+    }
+
+    private static final Comparator<Command> HELP_ORDER =
+            Comparator.comparing((Command c) -> c.getCommandInfo().getAuthenticationRole())
+                    .thenComparing(Command::toString);
+
+    /**
+     * @return the visible commands, in the order the help command lists them
+     */
+    private static List<Command> sortVisibleCommands(Command[] commands, CommandTable table) {
+        int sorted = table == null ? 0 : table.size();
+        List<Command> others = Arrays.stream(commands, sorted, commands.length)
+                .filter((Command s) -> s.getCommandInfo().isVisible())
+                .sorted(HELP_ORDER)
+                .collect(Collectors.toList());
+        if (table == null) {
+            return others;
+        }
+
+        // the commands of the table were sorted at compile time, so only the others need merging in
+        int[] helpOrder = table.getHelpOrder();
+        List<Command> visible = new ArrayList<>(helpOrder.length + others.size());
+        int next = 0;
+        for (int position : helpOrder) {
+            Command command = commands[position];
+            while (next < others.size() && HELP_ORDER.compare(others.get(next), command) < 0) {
+                visible.add(others.get(next++));
+            }
+            visible.add(command);
+        }
+        visible.addAll(others.subList(next, others.size()));
+        return visible;
     }
 
-    private static final Pattern PARTS_PATTERN = Pattern.compile("([^\"]\\S*|\".+?\")\\s*");
-    private List<String> breakIntoParts(String commandString) {
-        List<String> list = new ArrayList<>();
-        Matcher m = PARTS_PATTERN.matcher(commandString);
-        while (m.find())
-            list.add(m.group(1).replace("\"", ""));
-        return list;
+    private char[] findLeadingCharacters() {
+        if (!commandPrefix.isEmpty()) {
+            return new char[]{commandPrefix.charAt(0)};
+        }
+
+        // Without a prefix, the group replies to every message unless it is silent. Even then, it
+        // handles every message if it has a catch-all command.
+        CommandTree.Node root = commandTree.getRoot();
+        if (!requestSilent || root.hasCatchAll()) {
+            return null;
+        }
+
+        // otherwise, a message must start with a command name, or with a quote
+        StringBuilder characters = new StringBuilder("\"");
+        for (String name : root.getNames()) {
+            if (characters.indexOf(String.valueOf(name.charAt(0))) < 0) {
+                characters.append(name.charAt(0));
+            }
+        }
+        return characters.toString().toCharArray();
     }
 
     public boolean exec(String message, List<User> mentionedUsers, User sender, boolean silent) {
@@ -69,12 +126,9 @@ public class CommandGroup {
             return false;
         }
 
-        // strip the command string out
-        message = message.substring(commandPrefix.length());
-
-        // break the command down into its parameters
-        List<String> commandParts = breakIntoParts(message);
-        return exec(new CommandInput(commandParts, new ArrayList<>(), null), silent);
+        // break the command down into its parameters, skipping the prefix
+        CommandTokens commandParts = new CommandTokens(message, commandPrefix.length());
+        return exec(new CommandInput(commandParts, new ArrayList<>(), null, BotUtils.getContext()), silent);
     }
 
     @SuppressWarnings("UnusedReturnValue")
@@ -83,47 +137,125 @@ public class CommandGroup {
     }
 
     public boolean exec(CommandInput input, boolean silent) {
-        if (commands == null) {
+        if (commandTree == null) {
             return false;
         }
+        return exec(commandTree.getRoot(), input, silent);
+    }
+
+    private static boolean exec(CommandTree.Node level, CommandInput input, boolean silent) {
+        // once a branch has been found, the command counts as handled whatever its subcommands do
+        boolean descended = false;
 
-        if (input.getTokenCount() == 0) {
-            if (!silent && !requestSilent) {
-                BotUtils.sendMessage("Empty command");
+        while (true) {
+            boolean quiet = silent || level.getGroup().requestSilent;
+            CommandContext context = input.getContext();
+
+            if (!input.hasToken(0)) {
+                if (!quiet) {
+                    context.sendMessage("Empty command");
+                }
+                return descended;
             }
-            return false;
-        }
 
-        // Check whether a user sent a valid command.
-        boolean found = false;
-        for (Command command : commands) {
-            CommandInfo commandInfo = command.getCommandInfo();
-            String[] commandNames = commandInfo.getNames();
-            for (String name : commandNames) {
-                if (name.isEmpty() || name.equals(input.getToken(0))) {
-                    if (commandInfo.requiresAuthentication()) {
-                        if (!BotUtils.checkPermission(input.getSender(), commandInfo.getAuthenticationRole())) {
-                            if (!silent && !requestSilent) {
-                                BotUtils.sendMessage("You do not have permission to use this command");
-                            }
-                            continue;
+            // Check whether a user sent a valid command.
+            CommandTree.Node[] handlers = level.lookup(input.getToken(0));
+
+            boolean found = false;
+            CommandTree.Node branch = null;
+            for (CommandTree.Node handler : handlers) {
+                Command command = handler.getCommand();
+                CommandInfo commandInfo = command.getCommandInfo();
+                if (commandInfo.requiresAuthentication()) {
+                    if (!context.checkPermission(input.getSender(), commandInfo.getAuthenticationRole())) {
+                        if (!quiet) {
+                            context.sendMessage("You do not have permission to use this command");
                         }
+                        continue;
                     }
-                    command.exec(input);
-                    found = true;
+                }
+                found = true;
+
+                RateLimiter rateLimiter = handler.getRateLimiter();
+                if (rateLimiter != null) {
+                    long wait = rateLimiter.tryAcquire(context);
+                    if (wait != 0) {
+                        if (!quiet && wait > 0) {
+                            long seconds = (wait + 999) / 1000;
+                            context.sendMessage("You're using this command too often, try again in "
+                                    + seconds + (seconds == 1 ? " second" : " seconds"));
+                        }
+                        continue;
+                    }
+                }
+
+                if (!handler.isBranch()) {
+                    ArgumentParser argumentParser = handler.getArgumentParser();
+                    if (argumentParser == null) {
+                        run(level.getGroup(), command, input);
+                        continue;
+                    }
+
+                    // reject bad arguments before the command runs
+                    try {
+                        run(level.getGroup(), command, input.withArguments(argumentParser.parse(input)));
+                    } catch (ArgumentParser.InvalidArgumentException e) {
+                        if (!quiet) {
+                            context.sendMessage(e.getMessage());
+                        }
+                    }
+                } else if (handlers.length == 1) {
+                    // the only handler is a branch, so carry on walking down the tree
+                    branch = handler;
+                } else {
+                    CommandInput rest = new CommandInput(input);
+                    rest.discardToken(0);
+                    exec(handler, rest, false);
+                }
+            }
+
+            if (branch != null) {
+                input = new CommandInput(input);
+                input.discardToken(0);
+                level = branch;
+                descended = true;
+                // a nested group only follows its own silence setting, as when branches ran it themselves
+                silent = false;
+                continue;
+            }
+
+            if (found) {
+                return true;
+            }
+
+            // The user sent an unknown command.
+            if (!quiet) {
+                CommandSuggestions suggestions = level.getGroup().suggestions;
+                String suggestion = suggestions == null ? null : suggestions.suggest(input.getToken(0));
+                if (suggestion == null) {
+                    context.sendMessage("Couldn't understand that");
+                } else {
+                    context.sendMessage("Couldn't understand that (did you mean \"" + suggestion + "\"?)");
                 }
             }
+            return descended;
         }
+    }
 
-        if (found) {
-            return true;
+    private static void run(CommandGroup group, Command command, CommandInput input) {
+        // requests the command makes go through its context, so give it the command's priority
+        RestScheduler.Priority restPriority = command.getCommandInfo().getRestPriority();
+        CommandContext context = input.getContext();
+        if (context != null && context.getRestPriority() != restPriority) {
+            input = input.withContext(context.withRestPriority(restPriority));
         }
 
-        // The user sent an unknown command.
-        if (!silent && !requestSilent) {
-            BotUtils.sendMessage("Couldn't understand that");
+        CommandExecutor executor = group.bot == null ? null : group.bot.getCommandExecutor();
+        if (executor == null) {
+            CommandExecutor.runInline(command, input);
+        } else {
+            executor.run(command, input);
         }
-        return false;
     }
 
     List<Command> getVisibleCommands() {
@@ -141,6 +273,7 @@ public class CommandGroup {
     public void free() {
         visibleCommands = null;
         commands = null;
+        commandTree = null;
     }
 
     public void onLogin() {
@@ -157,6 +290,10 @@ public class CommandGroup {
                 c.onLogout();
             }
         }
+
+        // send any replies still waiting before the connection closes; the buffers are shared, so
+        // the first group to log out clears them for every group
+        MessageCoalescer.clear();
     }
 
     public void addTo(Bot bot) {
@@ -167,6 +304,13 @@ public class CommandGroup {
         }
     }
 
+    /**
+     * @return the compiled commands of this group and all nested groups, or null if the group was freed
+     */
+    public CommandTree getCommandTree() {
+        return commandTree;
+    }
+
     public Bot getBot() {
         return bot;
     }
@@ -175,11 +319,18 @@ public class CommandGroup {
         return commandPrefix;
     }
 
+    char[] getLeadingCharacters() {
+        return leadingCharacters;
+    }
+
     public static class Builder {
         private final ArrayList<Command> commands;
+        // the table holding the first commands, or null if they weren't added from a table
+        private CommandTable table;
         private String commandPrefix;
         private boolean helpEnabled;
         private boolean requestSilent;
+        private boolean suggestCommands;
 
         public Builder() {
             this.commands = new ArrayList<>();
@@ -192,6 +343,22 @@ public class CommandGroup {
             return this;
         }
 
+        /**
+         * Adds the commands of a table, such as one generated for {@link BotCommand}. If the
+         * table is the first thing added, the group uses the index and help order computed for
+         * it instead of computing them again.
+         *
+         * @param table the commands to add
+         * @return the builder for method call chaining
+         */
+        public Builder add(CommandTable table) {
+            if (commands.isEmpty()) {
+                this.table = table;
+            }
+            commands.addAll(Arrays.asList(table.getCommands()));
+            return this;
+        }
+
         public Builder setCommandPrefix(String prefix) {
             this.commandPrefix = prefix;
             return this;
@@ -207,6 +374,17 @@ public class CommandGroup {
             return this;
         }
 
+        /**
+         * Sets whether to suggest the closest command name when an unknown command is sent.
+         *
+         * @param suggest whether to suggest command names
+         * @return the builder for method call chaining
+         */
+        public Builder setSuggestCommands(boolean suggest) {
+            this.suggestCommands = suggest;
+            return this;
+        }
+
         public CommandGroup build() {
             if (this.helpEnabled) {
                 this.add(new Help());
@@ -1,5 +1,11 @@
 package com.ekkongames.jdacbl.commands;
 
+import com.ekkongames.jdacbl.utils.RestScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Created by Dolphish on 2016-10-28.
  */
@@ -11,14 +17,33 @@ public class CommandInfo {
     private final String usage;
     private final boolean visible;
     private final String authRole;
+    private final Argument[] arguments;
+    private final long timeout;
+    private final RateLimit[] rateLimits;
+    private final RestScheduler.Priority restPriority;
 
     private CommandInfo(Builder builder) {
         this.names = builder.names;
         this.helpText = builder.helpText;
         this.moreHelpText = builder.moreHelpText;
-        this.usage = builder.usage;
         this.visible = builder.visible;
         this.authRole = builder.authRole;
+        this.arguments = builder.arguments.toArray(new Argument[0]);
+        this.timeout = builder.timeout;
+        this.rateLimits = builder.rateLimits.toArray(new RateLimit[0]);
+        this.restPriority = builder.restPriority;
+
+        // describe the arguments if no usage was given
+        if (builder.usage.isEmpty() && arguments.length > 0) {
+            StringBuilder usage = new StringBuilder();
+            for (Argument argument : arguments) {
+                usage.append(argument.isOptional() ? "[" : "<").append(argument.getName());
+                usage.append(argument.isOptional() ? "] " : "> ");
+            }
+            this.usage = usage.toString().trim();
+        } else {
+            this.usage = builder.usage;
+        }
     }
 
     public String[] getNames() {
@@ -49,6 +74,62 @@ public class CommandInfo {
         return authRole;
     }
 
+    /**
+     * @return the arguments the command declared, in order
+     */
+    public Argument[] getArguments() {
+        return arguments;
+    }
+
+    /**
+     * @return how long the command may run in milliseconds, or 0 to use the executor's timeout
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return the limits on how often the command can be used
+     */
+    public RateLimit[] getRateLimits() {
+        return rateLimits;
+    }
+
+    /**
+     * @return the priority of the requests the command makes through its context, other than replies
+     */
+    public RestScheduler.Priority getRestPriority() {
+        return restPriority;
+    }
+
+    /**
+     * An argument declared by a command, which is converted to its type before the command runs.
+     */
+    public static final class Argument {
+
+        private final String name;
+        private final ArgumentType type;
+        private final boolean optional;
+
+        private Argument(String name, ArgumentType type, boolean optional) {
+            this.name = name;
+            this.type = type;
+            this.optional = optional;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public ArgumentType getType() {
+            return type;
+        }
+
+        public boolean isOptional() {
+            return optional;
+        }
+    }
+
     public static class Builder {
 
         private String[] names;
@@ -57,6 +138,10 @@ public class CommandInfo {
         private String usage;
         private boolean visible;
         private String authRole;
+        private final List<Argument> arguments;
+        private long timeout;
+        private final List<RateLimit> rateLimits;
+        private RestScheduler.Priority restPriority;
 
         public Builder() {
             this.names = new String[0];
@@ -65,6 +150,10 @@ public class CommandInfo {
             this.usage = "";
             this.visible = true;
             this.authRole = "";
+            this.arguments = new ArrayList<>();
+            this.timeout = 0;
+            this.rateLimits = new ArrayList<>();
+            this.restPriority = RestScheduler.Priority.BACKGROUND;
         }
 
         public Builder names(String... names) {
@@ -97,6 +186,91 @@ public class CommandInfo {
             return this;
         }
 
+        /**
+         * Declares an argument that must be given after the command name. Arguments are checked and
+         * converted before the command runs, and are available from {@link CommandInput#getArguments()}.
+         *
+         * @param name the name of the argument, shown in the usage
+         * @param type the type to convert the argument to
+         * @return the builder for method call chaining
+         */
+        public Builder argument(String name, ArgumentType type) {
+            if (!arguments.isEmpty() && arguments.get(arguments.size() - 1).isOptional()) {
+                throw new IllegalStateException("Required arguments must come before optional arguments!");
+            }
+            arguments.add(new Argument(name, type, false));
+            return this;
+        }
+
+        /**
+         * Declares an argument that may be given after the required arguments.
+         *
+         * @param name the name of the argument, shown in the usage
+         * @param type the type to convert the argument to
+         * @return the builder for method call chaining
+         * @see #argument(String, ArgumentType)
+         */
+        public Builder optionalArgument(String name, ArgumentType type) {
+            arguments.add(new Argument(name, type, true));
+            return this;
+        }
+
+        /**
+         * Sets how long the command may run when commands are run by a {@link CommandExecutor}.
+         *
+         * @param timeout the timeout, or 0 to use the executor's timeout
+         * @param unit    the unit of the timeout
+         * @return the builder for method call chaining
+         */
+        public Builder timeout(long timeout, TimeUnit unit) {
+            this.timeout = unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * Limits how often the command can be used. Uses over the limit are rejected before the
+         * command runs, and don't count as uses.
+         *
+         * @param rateLimit the limit to add
+         * @return the builder for method call chaining
+         */
+        public Builder rateLimit(RateLimit rateLimit) {
+            rateLimits.add(rateLimit);
+            return this;
+        }
+
+        /**
+         * Allows the command to be used once per cooldown, counted from the last use that was
+         * allowed.
+         *
+         * @param scope    who the cooldown applies to
+         * @param cooldown the time between uses
+         * @param unit     the unit of the cooldown
+         * @return the builder for method call chaining
+         * @see #rateLimit(RateLimit)
+         */
+        public Builder cooldown(RateLimit.Scope scope, long cooldown, TimeUnit unit) {
+            return rateLimit(RateLimit.tokenBucket(scope, 1, cooldown, unit));
+        }
+
+        /**
+         * Sets the priority of the requests the command makes through
+         * {@link CommandInput#getContext()}, such as changing roles and nicknames. Commands changing
+         * many members at once should use {@link RestScheduler.Priority#BULK}, so that they don't
+         * delay other commands. Replies are always {@link RestScheduler.Priority#INTERACTIVE}.
+         *
+         * @param restPriority the priority, {@link RestScheduler.Priority#BACKGROUND} by default
+         * @return the builder for method call chaining
+         * @see CommandContext#withRestPriority(RestScheduler.Priority)
+         */
+        public Builder restPriority(RestScheduler.Priority restPriority) {
+            if (restPriority == RestScheduler.Priority.INTERACTIVE) {
+                throw new IllegalArgumentException("Only replies can be interactive!");
+            }
+            this.restPriority = restPriority;
+            return this;
+        }
+
         public CommandInfo build() {
             return new CommandInfo(this);
         }
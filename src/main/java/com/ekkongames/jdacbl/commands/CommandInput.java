@@ -1,5 +1,6 @@
 package com.ekkongames.jdacbl.commands;
 
+import com.ekkongames.jdacbl.utils.BotUtils;
 import net.dv8tion.jda.api.entities.User;
 
 import java.util.ArrayList;
@@ -11,45 +12,153 @@ import java.util.List;
 @SuppressWarnings({"unused", "RedundantSuppression"})
 public class CommandInput {
 
-    private final List<String> commandParts;
+    // shared between copies; this input only sees the tokens from start onwards
+    private CommandTokens tokens;
+    private int start;
     private final List<User> mentionedUsers;
     private final User sender;
+    private final CommandContext context;
+    private CommandArguments arguments;
 
     public CommandInput(CommandInput toCopy) {
-        this.commandParts = new ArrayList<>(toCopy.commandParts);
+        this.tokens = toCopy.tokens;
+        this.start = toCopy.start;
         this.mentionedUsers = toCopy.mentionedUsers;
         this.sender = toCopy.sender;
+        this.context = toCopy.context;
+        this.arguments = toCopy.arguments;
     }
 
     public CommandInput(List<String> commandParts) {
-        this.commandParts = commandParts;
-        this.mentionedUsers = new ArrayList<>();
-        this.sender = null;
+        this(commandParts, new ArrayList<>(), null);
     }
 
     public CommandInput(List<String> commandParts, List<User> mentionedUsers, User sender) {
-        this.commandParts = commandParts;
+        this(commandParts, mentionedUsers, sender, BotUtils.getContext());
+    }
+
+    /**
+     * @param commandParts   the tokens of the input
+     * @param mentionedUsers the users mentioned in the input
+     * @param sender         the user who sent the input
+     * @param context        the message the input comes from
+     */
+    public CommandInput(List<String> commandParts, List<User> mentionedUsers, User sender, CommandContext context) {
+        this(new CommandTokens(commandParts), mentionedUsers, sender, context);
+    }
+
+    CommandInput(CommandTokens tokens, List<User> mentionedUsers, User sender, CommandContext context) {
+        this.tokens = tokens;
+        this.start = 0;
         this.mentionedUsers = mentionedUsers;
         this.sender = sender;
+        this.context = context;
+        this.arguments = CommandArguments.EMPTY;
+    }
+
+    private CommandInput(CommandInput toCopy, CommandArguments arguments) {
+        this(toCopy);
+        this.arguments = arguments;
+    }
+
+    private CommandInput(CommandInput toCopy, CommandContext context) {
+        this.tokens = toCopy.tokens;
+        this.start = toCopy.start;
+        this.mentionedUsers = toCopy.mentionedUsers;
+        this.sender = toCopy.sender;
+        this.context = context;
+        this.arguments = toCopy.arguments;
+    }
+
+    CommandInput withArguments(CommandArguments arguments) {
+        return new CommandInput(this, arguments);
+    }
+
+    CommandInput withContext(CommandContext context) {
+        return new CommandInput(this, context);
     }
 
     public int getTokenCount() {
-        return commandParts.size();
+        return tokens.size() - start;
     }
 
     public String getToken(int index) {
-        return commandParts.get(index);
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        return tokens.get(start + index);
+    }
+
+    /**
+     * Checks for a token without tokenizing the rest of the input.
+     *
+     * @param index the index of the token to check for
+     * @return whether there is a token at the specified index
+     */
+    public boolean hasToken(int index) {
+        return index >= 0 && tokens.has(start + index);
+    }
+
+    /**
+     * Gets the input starting at the specified token, as it was sent. Useful for commands that
+     * take free-form text, since the text isn't tokenized.
+     *
+     * @param index the index of the first token to include
+     * @return the input from the specified token onwards, or an empty sequence if there is no such token
+     */
+    public CharSequence getRemainder(int index) {
+        if (index < 0) {
+            return "";
+        }
+        return tokens.getRemainder(start + index);
+    }
+
+    /**
+     * @return the arguments declared by the command being run, already converted to their types
+     */
+    public CommandArguments getArguments() {
+        return arguments;
     }
 
     public List<User> getMentionedUsers() {
         return mentionedUsers;
     }
 
+    /**
+     * Discards a token from this input. Discarding the first token is a constant-time operation;
+     * discarding any other token copies the remaining tokens.
+     *
+     * @param index the index of the token to discard
+     */
     public void discardToken(int index) {
-        commandParts.remove(index);
+        // make sure the token exists
+        getToken(index);
+
+        if (index == 0) {
+            start++;
+            return;
+        }
+
+        // other inputs may share the tokens, so they can't be modified in place
+        int count = getTokenCount();
+        List<String> remaining = new ArrayList<>(count - 1);
+        for (int i = 0; i < count; i++) {
+            if (i != index) {
+                remaining.add(getToken(i));
+            }
+        }
+        tokens = new CommandTokens(remaining);
+        start = 0;
     }
 
     public User getSender() {
         return sender;
     }
+
+    /**
+     * @return the message this input comes from, which can be used to reply
+     */
+    public CommandContext getContext() {
+        return context;
+    }
 }
@@ -0,0 +1,108 @@
+package com.ekkongames.jdacbl.commands;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides which command groups could handle a message by looking only at its first character.
+ * Messages that no group could handle, which is most of them in a busy guild, are rejected without
+ * being passed to any group.
+ */
+public final class CommandRouter {
+
+    private static final int ASCII_CHARACTERS = 128;
+
+    private final CommandGroup[] groups;
+
+    // groups that could handle a message starting with any character, in order
+    private final CommandGroup[] unfilteredGroups;
+
+    // groups that could handle a message starting with each character, in order
+    private final CommandGroup[][] asciiRoutes;
+    private final Map<Character, CommandGroup[]> otherRoutes;
+
+    public CommandRouter(CommandGroup[] groups) {
+        this.groups = groups;
+
+        List<CommandGroup> unfiltered = new ArrayList<>();
+        StringBuilder characters = new StringBuilder();
+        for (CommandGroup group : groups) {
+            char[] leadingCharacters = group.getLeadingCharacters();
+            if (leadingCharacters == null) {
+                unfiltered.add(group);
+                continue;
+            }
+
+            for (char c : leadingCharacters) {
+                if (characters.indexOf(String.valueOf(c)) < 0) {
+                    characters.append(c);
+                }
+            }
+        }
+        this.unfilteredGroups = unfiltered.toArray(new CommandGroup[0]);
+
+        this.asciiRoutes = new CommandGroup[ASCII_CHARACTERS][];
+        for (int i = 0; i < ASCII_CHARACTERS; i++) {
+            asciiRoutes[i] = unfilteredGroups;
+        }
+        this.otherRoutes = new HashMap<>();
+
+        for (int i = 0; i < characters.length(); i++) {
+            char c = characters.charAt(i);
+            CommandGroup[] route = findGroups(c);
+            if (c < ASCII_CHARACTERS) {
+                asciiRoutes[c] = route;
+            } else {
+                otherRoutes.put(c, route);
+            }
+        }
+    }
+
+    private CommandGroup[] findGroups(char c) {
+        List<CommandGroup> route = new ArrayList<>();
+        for (CommandGroup group : groups) {
+            char[] leadingCharacters = group.getLeadingCharacters();
+            if (leadingCharacters == null) {
+                route.add(group);
+                continue;
+            }
+
+            for (char leadingCharacter : leadingCharacters) {
+                if (leadingCharacter == c) {
+                    route.add(group);
+                    break;
+                }
+            }
+        }
+        return route.toArray(new CommandGroup[0]);
+    }
+
+    /**
+     * Finds the groups that could handle a message. The returned array is shared, so it must not be
+     * modified.
+     *
+     * @param message the message that was sent
+     * @return the groups to try, in order
+     */
+    public CommandGroup[] route(String message) {
+        if (message.isEmpty()) {
+            return unfilteredGroups;
+        }
+
+        char c = message.charAt(0);
+        if (c < ASCII_CHARACTERS) {
+            return asciiRoutes[c];
+        }
+        CommandGroup[] route = otherRoutes.get(c);
+        return route == null ? unfilteredGroups : route;
+    }
+
+    /**
+     * @return every group, in order
+     */
+    public CommandGroup[] getCommandGroups() {
+        return groups;
+    }
+}
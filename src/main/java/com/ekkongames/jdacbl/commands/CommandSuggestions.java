@@ -0,0 +1,134 @@
+package com.ekkongames.jdacbl.commands;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Suggests command names close to a misspelled name. Names are stored in a BK-tree, so a lookup
+ * only measures the distance to the few names that could be close enough, rather than to every name.
+ */
+final class CommandSuggestions {
+
+    // the furthest a suggestion can be from what was typed
+    private static final int MAX_DISTANCE = 2;
+
+    private final Node root;
+
+    private CommandSuggestions(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * @param names the names to suggest
+     * @return the suggestions, or null if there are no names
+     */
+    static CommandSuggestions build(Collection<String> names) {
+        Node root = null;
+        for (String name : names) {
+            if (name.isEmpty()) {
+                continue;
+            }
+
+            if (root == null) {
+                root = new Node(name);
+            } else {
+                root.add(name);
+            }
+        }
+        return root == null ? null : new CommandSuggestions(root);
+    }
+
+    /**
+     * @param typed the name that was typed
+     * @return the closest name, or null if no name is close enough
+     */
+    String suggest(String typed) {
+        String key = typed.toLowerCase(Locale.ROOT);
+
+        // short names need to be closer, since everything is a small distance away from them
+        int maxDistance = Math.min(MAX_DISTANCE, Math.max(0, key.length() - 2));
+
+        String best = null;
+        int bestDistance = maxDistance + 1;
+
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int distance = distance(key, node.key);
+            if (distance < bestDistance) {
+                best = node.name;
+                bestDistance = distance;
+            }
+
+            // by the triangle inequality, only children in this range can be close enough
+            for (int d = Math.max(1, distance - maxDistance); d <= distance + maxDistance; d++) {
+                Node child = node.children.get(d);
+                if (child != null) {
+                    pending.push(child);
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the Levenshtein distance between two strings: the number of insertions, deletions and
+     * substitutions needed to get from one to the other
+     */
+    private static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private static final class Node {
+        private final String name;
+        private final String key;
+        private final Map<Integer, Node> children;
+
+        Node(String name) {
+            this.name = name;
+            this.key = name.toLowerCase(Locale.ROOT);
+            this.children = new HashMap<>();
+        }
+
+        void add(String name) {
+            Node node = this;
+            String key = name.toLowerCase(Locale.ROOT);
+            while (true) {
+                int distance = distance(key, node.key);
+                if (distance == 0) {
+                    // already suggested by an earlier name
+                    return;
+                }
+
+                Node child = node.children.get(distance);
+                if (child == null) {
+                    node.children.put(distance, new Node(name));
+                    return;
+                }
+                node = child;
+            }
+        }
+    }
+}
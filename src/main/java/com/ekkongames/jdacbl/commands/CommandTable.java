@@ -0,0 +1,68 @@
+package com.ekkongames.jdacbl.commands;
+
+/**
+ * Commands along with the dispatch index and help order computed for them at compile time.
+ * The {@code BotCommands} classes generated for {@link BotCommand} create one and add it to a
+ * {@link CommandGroup.Builder}, so a group built from it doesn't need to index or sort those
+ * commands when it is loaded.
+ * <p>
+ * Commands are referred to by their position in the table. The commands must use the
+ * {@link CommandInfo} they were created with, since the index was computed from it.
+ */
+public final class CommandTable {
+
+    private final Command[] commands;
+    // every non-empty name, and the positions of the commands handling each one, in order
+    private final String[] names;
+    private final int[][] handlers;
+    // the positions of the catch-all commands, in order
+    private final int[] catchAll;
+    // the positions of the visible commands, in the order the help command lists them
+    private final int[] helpOrder;
+
+    /**
+     * @param commands  the commands, in the order they are dispatched in
+     * @param names     every non-empty name of the commands
+     * @param handlers  for each name, the positions of the commands handling it, including
+     *                  catch-all commands, in dispatch order
+     * @param catchAll  the positions of the catch-all commands, in dispatch order
+     * @param helpOrder the positions of the visible commands, sorted by role and then by name
+     */
+    public CommandTable(Command[] commands, String[] names, int[][] handlers, int[] catchAll, int[] helpOrder) {
+        if (names.length != handlers.length) {
+            throw new IllegalArgumentException("Every name must have handlers!");
+        }
+        this.commands = commands;
+        this.names = names;
+        this.handlers = handlers;
+        this.catchAll = catchAll;
+        this.helpOrder = helpOrder;
+    }
+
+    /**
+     * @return the number of commands in the table
+     */
+    public int size() {
+        return commands.length;
+    }
+
+    Command[] getCommands() {
+        return commands;
+    }
+
+    String[] getNames() {
+        return names;
+    }
+
+    int[][] getHandlers() {
+        return handlers;
+    }
+
+    int[] getCatchAll() {
+        return catchAll;
+    }
+
+    int[] getHelpOrder() {
+        return helpOrder;
+    }
+}
@@ -0,0 +1,139 @@
+package com.ekkongames.jdacbl.commands;
+
+/**
+ * Splits a command message into tokens in a single pass, without allocating. Tokens are reported
+ * as offsets into the original message; use {@link #getText(String, int, int)} to read one.
+ * <p>
+ * A token is either a run of characters up to the next whitespace character, or a quoted string
+ * that doesn't span multiple lines. Quotes are not part of the token text. An opening quote without
+ * a matching closing quote is skipped.
+ */
+final class CommandTokenizer {
+
+    private final String message;
+    private int position;
+    private int tokenStart;
+    private int tokenEnd;
+
+    /**
+     * @param message the message to tokenize
+     * @param from    the index to start tokenizing from
+     */
+    CommandTokenizer(String message, int from) {
+        this.message = message;
+        this.position = from;
+        this.tokenStart = from;
+        this.tokenEnd = from;
+    }
+
+    /**
+     * Advances to the next token.
+     *
+     * @return whether another token was found
+     */
+    boolean next() {
+        int length = message.length();
+        while (position < length) {
+            int start = position;
+
+            if (message.charAt(start) != '"') {
+                // the first character is taken as-is, even if it is whitespace
+                int end = start + 1;
+                while (end < length && !isWhitespace(message.charAt(end))) {
+                    end++;
+                }
+                return found(start, end);
+            }
+
+            // a quoted token holds at least one character, and ends at the next quote on the same line
+            int end = start + 1;
+            if (end < length && !isLineTerminator(message.charAt(end))) {
+                for (end++; end < length; end++) {
+                    char c = message.charAt(end);
+                    if (c == '"') {
+                        return found(start, end + 1);
+                    }
+                    if (isLineTerminator(c)) {
+                        break;
+                    }
+                }
+            }
+
+            // unmatched quote, so try again from the next character
+            position = start + 1;
+        }
+        return false;
+    }
+
+    private boolean found(int start, int end) {
+        tokenStart = start;
+        tokenEnd = end;
+
+        // skip any whitespace following the token
+        int length = message.length();
+        while (end < length && isWhitespace(message.charAt(end))) {
+            end++;
+        }
+        position = end;
+        return true;
+    }
+
+    /**
+     * @return the index of the first character of the current token
+     */
+    int getTokenStart() {
+        return tokenStart;
+    }
+
+    /**
+     * @return the index after the last character of the current token
+     */
+    int getTokenEnd() {
+        return tokenEnd;
+    }
+
+    /**
+     * @return the index tokenizing will continue from
+     */
+    int getPosition() {
+        return position;
+    }
+
+    /**
+     * Reads the text of a token, without any quotes.
+     *
+     * @param message the message the token was found in
+     * @param start   the index of the first character of the token
+     * @param end     the index after the last character of the token
+     * @return the text of the token
+     */
+    static String getText(String message, int start, int end) {
+        int quote = start;
+        while (quote < end && message.charAt(quote) != '"') {
+            quote++;
+        }
+        if (quote == end) {
+            return message.substring(start, end);
+        }
+
+        StringBuilder text = new StringBuilder(end - start);
+        text.append(message, start, quote);
+        for (int i = quote + 1; i < end; i++) {
+            char c = message.charAt(i);
+            if (c != '"') {
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+
+    // matches the regex character class \s
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    // matches the characters not accepted by the regex wildcard
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
@@ -0,0 +1,120 @@
+package com.ekkongames.jdacbl.commands;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The tokens of a command message, stored as offsets into the message. The message is only
+ * tokenized as far as the tokens that have been asked for, and the text of a token is only created
+ * the first time it is read.
+ * <p>
+ * Tokens are never removed, so one instance can be shared by any number of {@link CommandInput}s.
+ */
+final class CommandTokens {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    // null if the tokens were provided directly
+    private final String message;
+
+    // null once the whole message has been tokenized
+    private CommandTokenizer tokenizer;
+
+    // start and end offsets of each token, interleaved
+    private int[] offsets;
+    private String[] text;
+    private int size;
+
+    /**
+     * @param message the message to tokenize
+     * @param from    the index to start tokenizing from
+     */
+    CommandTokens(String message, int from) {
+        this.message = message;
+        this.offsets = new int[INITIAL_CAPACITY * 2];
+        this.text = new String[INITIAL_CAPACITY];
+
+        this.tokenizer = new CommandTokenizer(message, from);
+    }
+
+    /**
+     * @param tokens the already-split tokens
+     */
+    CommandTokens(List<String> tokens) {
+        this.message = null;
+        this.text = tokens.toArray(new String[0]);
+        this.size = text.length;
+    }
+
+    /**
+     * Tokenizes the message up to the specified token.
+     *
+     * @param index the index of the token to find
+     * @return whether the token exists
+     */
+    private boolean tokenize(int index) {
+        while (size <= index && tokenizer != null) {
+            if (!tokenizer.next()) {
+                tokenizer = null;
+                break;
+            }
+
+            if (size == text.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                text = Arrays.copyOf(text, text.length * 2);
+            }
+            offsets[size * 2] = tokenizer.getTokenStart();
+            offsets[size * 2 + 1] = tokenizer.getTokenEnd();
+            size++;
+        }
+        return index < size;
+    }
+
+    /**
+     * @param index the index of the token to check for
+     * @return whether the message has a token at the specified index
+     */
+    boolean has(int index) {
+        return index >= 0 && tokenize(index);
+    }
+
+    /**
+     * @param index the index of the first token to include
+     * @return the message as it was sent, from the start of the specified token to the end
+     */
+    CharSequence getRemainder(int index) {
+        if (!has(index)) {
+            return "";
+        }
+        if (message == null) {
+            return String.join(" ", Arrays.asList(text).subList(index, size));
+        }
+        return CharBuffer.wrap(message, offsets[index * 2], message.length());
+    }
+
+    /**
+     * @param index the index of the token to read
+     * @return the text of the token
+     */
+    String get(int index) {
+        if (!has(index)) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+
+        String token = text[index];
+        if (token == null) {
+            token = CommandTokenizer.getText(message, offsets[index * 2], offsets[index * 2 + 1]);
+            text[index] = token;
+        }
+        return token;
+    }
+
+    /**
+     * @return the number of tokens in the message
+     */
+    int size() {
+        tokenize(Integer.MAX_VALUE);
+        return size;
+    }
+}
@@ -0,0 +1,247 @@
+package com.ekkongames.jdacbl.commands;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The commands of a group, and of every group nested inside it, compiled into a trie keyed on
+ * command names. A command's children in the trie are the commands of its child group, so a chain
+ * of subcommands can be resolved by walking down from the root one token at a time.
+ * <p>
+ * Nested groups share their compiled nodes with the tree of the group that contains them.
+ */
+public final class CommandTree {
+
+    private final Node root;
+
+    /**
+     * @param group    the group the commands belong to
+     * @param commands the commands of the group, in registration order
+     * @param table    a table holding the first commands and their index, or null if there is none
+     */
+    CommandTree(CommandGroup group, Command[] commands, CommandTable table) {
+        this.root = new Node(group, commands, table);
+    }
+
+    /**
+     * @return the node representing the group this tree was compiled from
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Follows a path of command names down the tree.
+     *
+     * @param path the names of the commands to follow, starting with a command in the root group
+     * @return the node at the end of the path, or null if there is no such command
+     */
+    public Node find(String... path) {
+        Node node = root;
+        for (String name : path) {
+            node = node.getChild(name);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * @return every command in the tree, depth-first in registration order
+     */
+    public List<Node> getNodes() {
+        List<Node> nodes = new ArrayList<>();
+        addNodes(root, nodes);
+        return nodes;
+    }
+
+    private static void addNodes(Node parent, List<Node> nodes) {
+        for (Node child : parent.getChildren()) {
+            nodes.add(child);
+            addNodes(child, nodes);
+        }
+    }
+
+    public static final class Node {
+
+        private static final Node[] NO_NODES = new Node[0];
+
+        // null for the root of a tree
+        private final Command command;
+        // the group the children of this node belong to, null if the node has no children
+        private final CommandGroup group;
+        // null if the command didn't declare any arguments
+        private final ArgumentParser argumentParser;
+        // null if the command didn't declare any rate limits
+        private final RateLimiter rateLimiter;
+
+        // index from each name to the children that handle it, in registration order
+        private final Map<String, Node[]> index;
+        private final Node[] catchAll;
+        private final List<Node> children;
+
+        private Node(CommandGroup group, Command[] commands, CommandTable table) {
+            this.command = null;
+            this.group = group;
+            this.argumentParser = null;
+            this.rateLimiter = null;
+
+            Node[] nodes = new Node[commands.length];
+            for (int i = 0; i < commands.length; i++) {
+                nodes[i] = new Node(commands[i]);
+            }
+            this.children = Collections.unmodifiableList(Arrays.asList(nodes));
+
+            // start from the index computed at compile time for the commands of the table, if any
+            Map<String, List<Node>> index = new HashMap<>();
+            List<Node> catchAll = table == null ? new ArrayList<>() : nodesAt(nodes, table.getCatchAll());
+            int indexed = 0;
+            if (table != null) {
+                String[] names = table.getNames();
+                int[][] handlers = table.getHandlers();
+                for (int i = 0; i < names.length; i++) {
+                    index.put(names[i], nodesAt(nodes, handlers[i]));
+                }
+                indexed = table.size();
+            }
+
+            for (int i = indexed; i < nodes.length; i++) {
+                Node node = nodes[i];
+                for (String name : node.command.getCommandInfo().getNames()) {
+                    if (name.isEmpty()) {
+                        // catch-all commands (those with an empty name) handle every name, so they are
+                        // added to each entry at the position they were registered in
+                        catchAll.add(node);
+                        for (List<Node> handlers : index.values()) {
+                            handlers.add(node);
+                        }
+                    } else {
+                        // a new name is also handled by the catch-all commands registered before it
+                        index.computeIfAbsent(name, (String n) -> new ArrayList<>(catchAll)).add(node);
+                    }
+                }
+            }
+
+            Map<String, Node[]> compiledIndex = new HashMap<>(index.size() * 2);
+            for (Map.Entry<String, List<Node>> entry : index.entrySet()) {
+                compiledIndex.put(entry.getKey(), entry.getValue().toArray(NO_NODES));
+            }
+            this.index = Collections.unmodifiableMap(compiledIndex);
+            this.catchAll = catchAll.toArray(NO_NODES);
+        }
+
+        private static List<Node> nodesAt(Node[] nodes, int[] positions) {
+            List<Node> list = new ArrayList<>(positions.length + 1);
+            for (int position : positions) {
+                list.add(nodes[position]);
+            }
+            return list;
+        }
+
+        private Node(Command command) {
+            this.command = command;
+            this.argumentParser = ArgumentParser.compile(command.getCommandInfo());
+            this.rateLimiter = RateLimiter.compile(command.getCommandInfo());
+
+            CommandGroup children = command.children;
+            if (children == null) {
+                this.group = null;
+                this.index = Collections.emptyMap();
+                this.catchAll = NO_NODES;
+                this.children = Collections.emptyList();
+            } else {
+                // share the nodes already compiled for the child group
+                Node level = children.getCommandTree().getRoot();
+                this.group = level.group;
+                this.index = level.index;
+                this.catchAll = level.catchAll;
+                this.children = level.children;
+            }
+        }
+
+        /**
+         * @return the command at this node, or null for the root of a tree
+         */
+        public Command getCommand() {
+            return command;
+        }
+
+        /**
+         * @return the group the children of this node belong to, or null if there are none
+         */
+        public CommandGroup getGroup() {
+            return group;
+        }
+
+        /**
+         * @return the commands nested under this node, in registration order
+         */
+        public List<Node> getChildren() {
+            return children;
+        }
+
+        /**
+         * @return whether dispatch walks through this node to its children without running the command
+         */
+        public boolean isBranch() {
+            return command instanceof CommandBranch;
+        }
+
+        /**
+         * @param name the name of the command to find
+         * @return the first child registered under the specified name, ignoring catch-all commands
+         */
+        public Node getChild(String name) {
+            for (Node child : lookup(name)) {
+                for (String childName : child.command.getCommandInfo().getNames()) {
+                    if (childName.equals(name)) {
+                        return child;
+                    }
+                }
+            }
+            return null;
+        }
+
+        ArgumentParser getArgumentParser() {
+            return argumentParser;
+        }
+
+        RateLimiter getRateLimiter() {
+            return rateLimiter;
+        }
+
+        /**
+         * @return the names of every child, not including catch-all commands
+         */
+        Set<String> getNames() {
+            return index.keySet();
+        }
+
+        /**
+         * @return whether any child is a catch-all command
+         */
+        boolean hasCatchAll() {
+            return catchAll.length > 0;
+        }
+
+        /**
+         * @param name the name sent by the user
+         * @return every child that handles the name, including catch-all commands
+         */
+        Node[] lookup(String name) {
+            Node[] handlers = index.get(name);
+            return handlers == null ? catchAll : handlers;
+        }
+
+        @Override
+        public String toString() {
+            return command == null ? "" : command.toString();
+        }
+    }
+}
@@ -1,7 +1,5 @@
 package com.ekkongames.jdacbl.commands;
 
-import com.ekkongames.jdacbl.utils.BotUtils;
-
 /**
  * @author Julian Dominguez-Schatz <jfdoming at ekkon.dx.am>
  */
@@ -50,36 +48,56 @@ public class Help extends Command {
     @Override
     public void exec(CommandInput input) {
         // check if the user is asking for a specific command or for general information
-        if (input.getTokenCount() > 1) {
+        if (input.hasToken(1)) {
             StringBuilder output = new StringBuilder();
 
-            for (Command command : commandGroup.getVisibleCommands()) {
-                CommandInfo commandInfo = command.getCommandInfo();
-                String[] commandNames = commandInfo.getNames();
-                for (String name : commandNames) {
-                    if (name.equals(input.getToken(1))) {
-                        if (commandInfo.requiresAuthentication()) {
-                            output.append(String.format("[ %s ] ", commandInfo.getAuthenticationRole()));
-                        }
+            // follow the requested path of subcommands down the command tree as far as it goes, so
+            // any words after the deepest command found are ignored
+            CommandTree.Node node = null;
+            CommandTree.Node level = commandGroup.getCommandTree().getRoot();
+            StringBuilder path = new StringBuilder();
+            for (int i = 1; input.hasToken(i); i++) {
+                CommandTree.Node child = level.getChild(input.getToken(i));
+                if (child == null || !child.getCommand().getCommandInfo().isVisible()) {
+                    break;
+                }
+                node = child;
+                level = child;
+                path.append(node.getCommand().getCommandInfo().getNames()[0]).append(" ");
+            }
 
-                        output.append(commandInfo.getNames()[0]).append(" ").append(commandInfo.getUsage());
-                        output.append("\n\n");
-                        String helpText = commandInfo.getHelpText();
-                        output.append(Character.toUpperCase(helpText.charAt(0)));
-                        output.append(helpText.substring(1)).append(". ");
-                        output.append(commandInfo.getMoreHelpText());
-                        break;
+            if (node != null) {
+                CommandInfo commandInfo = node.getCommand().getCommandInfo();
+                if (commandInfo.requiresAuthentication()) {
+                    output.append(String.format("[ %s ] ", commandInfo.getAuthenticationRole()));
+                }
+
+                output.append(path).append(commandInfo.getUsage());
+                output.append("\n\n");
+                String helpText = commandInfo.getHelpText();
+                output.append(Character.toUpperCase(helpText.charAt(0)));
+                output.append(helpText.substring(1)).append(". ");
+                output.append(commandInfo.getMoreHelpText());
+
+                StringBuilder subcommands = new StringBuilder();
+                for (CommandTree.Node child : node.getChildren()) {
+                    CommandInfo childInfo = child.getCommand().getCommandInfo();
+                    if (childInfo.isVisible() && !childInfo.getNames()[0].isEmpty()) {
+                        subcommands.append(subcommands.length() == 0 ? "" : ", ").append(childInfo.getNames()[0]);
                     }
                 }
+                if (subcommands.length() > 0) {
+                    output.append("\n\nSubcommands: ").append(subcommands);
+                }
             }
             if (output.length() == 0) {
                 output = new StringBuilder("Didn't find a command with the name \"" + input.getToken(1) + "\"");
             }
-            BotUtils.sendPlainMessage("```" + output.toString().trim() + "```");
+            input.getContext().sendPlainMessage("```" + output.toString().trim() + "```");
         } else if (generalHelpText == null || generalHelpText.isEmpty()) {
             throw new IllegalStateException("Help command not initialized!");
         } else {
-            BotUtils.sendPlainMessage(generalHelpText);
+            input.getContext().sendPlainMessage(generalHelpText);
         }
     }
 
@@ -0,0 +1,144 @@
+package com.ekkongames.jdacbl.commands;
+
+import com.ekkongames.jdacbl.utils.RestScheduler;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageChannel;
+import net.dv8tion.jda.api.requests.RestAction;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges replies sent to the same channel in quick succession into a single message, so that a
+ * command replying several times only makes one request to Discord. Replies are sent when the
+ * message handling them finishes, when the merged message would be too long, or after a short
+ * delay, whichever comes first.
+ */
+final class MessageCoalescer {
+
+    // the longest message Discord accepts
+    static final int MAX_LENGTH = 2000;
+
+    private static final long FLUSH_DELAY_MILLIS = 100;
+
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Message-Coalescer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // one buffer for each channel with replies waiting to be sent
+    private static final Map<Long, MessageCoalescer> buffers = new ConcurrentHashMap<>();
+
+    private final long id;
+    private MessageChannel channel;
+    private final StringBuilder pending = new StringBuilder();
+    private ScheduledFuture<?> scheduledFlush;
+    // set once the buffer has been emptied and removed; later replies go in a new buffer
+    private boolean removed;
+
+    private MessageCoalescer(long id) {
+        this.id = id;
+    }
+
+    /**
+     * Adds a message to the channel's buffer.
+     *
+     * @param channel the channel to send the message in
+     * @param message the message to send
+     */
+    static void send(MessageChannel channel, String message) {
+        // the buffer may be removed between finding it and adding to it, so try again with a new one
+        while (!buffers.computeIfAbsent(channel.getIdLong(), MessageCoalescer::new).append(channel, message)) {
+        }
+    }
+
+    /**
+     * Sends everything waiting in the channel's buffer.
+     *
+     * @param channel the channel to flush
+     */
+    static void flush(MessageChannel channel) {
+        MessageCoalescer buffer = buffers.get(channel.getIdLong());
+        if (buffer != null) {
+            buffer.flushPending();
+        }
+    }
+
+    /**
+     * Sends everything waiting in every buffer, and forgets every channel. Called when the bot
+     * logs out.
+     */
+    static void clear() {
+        for (MessageCoalescer buffer : buffers.values()) {
+            buffer.flushPending();
+        }
+        buffers.clear();
+    }
+
+    /**
+     * @return the number of channels with replies waiting to be sent
+     */
+    static int size() {
+        return buffers.size();
+    }
+
+    private synchronized boolean append(MessageChannel channel, String message) {
+        if (removed) {
+            return false;
+        }
+        this.channel = channel;
+        if (pending.length() > 0 && pending.length() + 1 + message.length() > MAX_LENGTH) {
+            sendPending();
+        }
+
+        // a message that is too long on its own is sent as it is, and Discord decides what to do with it
+        if (message.length() > MAX_LENGTH) {
+            send(channel.sendMessage(message));
+            return true;
+        }
+
+        if (pending.length() > 0) {
+            pending.append('\n');
+        }
+        pending.append(message);
+
+        if (scheduledFlush == null) {
+            scheduledFlush = timer.schedule(this::flushPending, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    private synchronized void flushPending() {
+        sendPending();
+
+        // nothing is waiting now, so the channel doesn't need a buffer until it is replied in again
+        if (!removed) {
+            removed = true;
+            buffers.remove(id, this);
+        }
+    }
+
+    // only called with the lock held
+    private void sendPending() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pending.length() == 0) {
+            return;
+        }
+
+        String message = pending.toString();
+        pending.setLength(0);
+        send(channel.sendMessage(message));
+    }
+
+    private void send(RestAction<Message> action) {
+        RestScheduler.getInstance().submit(RestScheduler.Priority.INTERACTIVE, "messages:" + channel.getId(), action);
+    }
+}
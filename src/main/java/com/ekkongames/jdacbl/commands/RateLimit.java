@@ -0,0 +1,94 @@
+package com.ekkongames.jdacbl.commands;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A limit on how often a command can be used, declared with {@link CommandInfo.Builder#rateLimit(RateLimit)}
+ * or {@link CommandInfo.Builder#cooldown(Scope, long, TimeUnit)}. Uses over the limit are rejected
+ * before the command runs.
+ */
+public final class RateLimit {
+
+    /**
+     * Who a limit applies to. Each user, channel or guild has its own allowance.
+     */
+    public enum Scope {
+        USER, CHANNEL, GUILD, GLOBAL
+    }
+
+    /**
+     * How uses are counted.
+     */
+    public enum Strategy {
+        /**
+         * Allows a number of uses in each period, counted from the start of the period.
+         */
+        FIXED_WINDOW,
+        /**
+         * Allows a burst of uses, then one use each time an interval passes.
+         */
+        TOKEN_BUCKET
+    }
+
+    private final Scope scope;
+    private final Strategy strategy;
+    private final int uses;
+    private final long periodMillis;
+
+    private RateLimit(Scope scope, Strategy strategy, int uses, long period, TimeUnit unit) {
+        if (uses < 1) {
+            throw new IllegalArgumentException("A rate limit must allow at least one use!");
+        }
+        if (unit.toMillis(period) < 1) {
+            throw new IllegalArgumentException("A rate limit must have a period of at least a millisecond!");
+        }
+        this.scope = scope;
+        this.strategy = strategy;
+        this.uses = uses;
+        this.periodMillis = unit.toMillis(period);
+    }
+
+    /**
+     * @param scope  who the limit applies to
+     * @param uses   the number of uses allowed in each period
+     * @param period the length of a period
+     * @param unit   the unit of the period
+     * @return a limit allowing a number of uses in each period
+     */
+    public static RateLimit fixedWindow(Scope scope, int uses, long period, TimeUnit unit) {
+        return new RateLimit(scope, Strategy.FIXED_WINDOW, uses, period, unit);
+    }
+
+    /**
+     * @param scope    who the limit applies to
+     * @param burst    the number of uses allowed at once
+     * @param interval the time it takes for one more use to be allowed
+     * @param unit     the unit of the interval
+     * @return a limit allowing a burst of uses, then one use per interval
+     */
+    public static RateLimit tokenBucket(Scope scope, int burst, long interval, TimeUnit unit) {
+        return new RateLimit(scope, Strategy.TOKEN_BUCKET, burst, interval, unit);
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * @return the uses allowed in each period, or the burst size of a token bucket
+     */
+    public int getUses() {
+        return uses;
+    }
+
+    /**
+     * @return the length of a period, or the refill interval of a token bucket, in milliseconds
+     */
+    public long getPeriod() {
+        return periodMillis;
+    }
+}
@@ -0,0 +1,259 @@
+package com.ekkongames.jdacbl.commands;
+
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.MessageChannel;
+import net.dv8tion.jda.api.entities.User;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Enforces the rate limits a command declared in its {@link CommandInfo}. Limiters are compiled
+ * once, when the command's group is built.
+ * <p>
+ * Each user, channel or guild has a bucket holding its state in a single long, which is updated
+ * with compare-and-set, so checking a limit never blocks. Buckets are spread over several maps,
+ * and every so often one map is swept for buckets that have fully reset, so memory only grows
+ * with the number of recent users.
+ */
+final class RateLimiter {
+
+    // the start of the clock used by all limiters, so times are small and never negative
+    private static final long ORIGIN = System.nanoTime();
+
+    // the time in milliseconds since the origin
+    private static final LongSupplier CLOCK = () -> (System.nanoTime() - ORIGIN) / 1_000_000;
+
+    private static final int STRIPES = 16;
+    private static final int SWEEP_INTERVAL = 256;
+
+    // fixed windows store the window number in the high bits and the uses in the low bits
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    // marks a bucket removed by a sweep, so a use racing with the sweep retries with a new bucket
+    private static final long DEAD = -1;
+
+    private final Limit[] limits;
+    private final LongSupplier clock;
+
+    private RateLimiter(RateLimit[] rateLimits, LongSupplier clock) {
+        this.clock = clock;
+        this.limits = new Limit[rateLimits.length];
+        for (int i = 0; i < rateLimits.length; i++) {
+            limits[i] = new Limit(rateLimits[i]);
+        }
+    }
+
+    /**
+     * @param commandInfo the command to enforce rate limits for
+     * @return a limiter for the command, or null if it didn't declare any limits
+     */
+    static RateLimiter compile(CommandInfo commandInfo) {
+        return compile(commandInfo, CLOCK);
+    }
+
+    /**
+     * @param commandInfo the command to enforce rate limits for
+     * @param clock       the current time in milliseconds, which must never go backwards
+     * @return a limiter for the command, or null if it didn't declare any limits
+     */
+    static RateLimiter compile(CommandInfo commandInfo, LongSupplier clock) {
+        if (commandInfo.getRateLimits().length == 0) {
+            return null;
+        }
+        return new RateLimiter(commandInfo.getRateLimits(), clock);
+    }
+
+    /**
+     * Records a use of the command, if every limit allows it. Limits are checked in order, so a use
+     * rejected by one limit still counts against the limits before it.
+     * <p>
+     * Only the first use rejected while waiting for a limit is told how long to wait, so spamming a
+     * command doesn't make the bot spam replies.
+     *
+     * @param context the message using the command
+     * @return 0 if the use is allowed, otherwise the number of milliseconds until it would be; the
+     * number is negative if an earlier rejected use was already told to wait
+     */
+    long tryAcquire(CommandContext context) {
+        long now = clock.getAsLong();
+        for (Limit limit : limits) {
+            long key;
+            switch (limit.rateLimit.getScope()) {
+                case USER: {
+                    User author = context.getAuthor();
+                    if (author == null) {
+                        continue;
+                    }
+                    key = author.getIdLong();
+                    break;
+                }
+                case CHANNEL: {
+                    MessageChannel channel = context.getMessageChannel();
+                    if (channel == null) {
+                        continue;
+                    }
+                    key = channel.getIdLong();
+                    break;
+                }
+                case GUILD: {
+                    Guild guild = context.getGuild();
+                    if (guild == null) {
+                        continue;
+                    }
+                    key = guild.getIdLong();
+                    break;
+                }
+                default:
+                    key = 0;
+                    break;
+            }
+
+            long wait = limit.tryAcquire(key, now);
+            if (wait != 0) {
+                return wait;
+            }
+        }
+        return 0;
+    }
+
+    private static final class Bucket extends AtomicLong {
+        // the time until which rejected uses were told to wait
+        private final AtomicLong toldUntil = new AtomicLong();
+
+        Bucket(long state) {
+            super(state);
+        }
+
+        /**
+         * @return whether a rejected use should be told to wait, because none has been since the
+         * last wait ended
+         */
+        boolean tell(long now, long until) {
+            long told = toldUntil.get();
+            return told <= now && toldUntil.compareAndSet(told, until);
+        }
+    }
+
+    private static final class Limit {
+        private final RateLimit rateLimit;
+        private final boolean tokenBucket;
+        private final long period;
+        private final int uses;
+
+        private final Map<Long, Bucket>[] stripes;
+        private final AtomicInteger operations = new AtomicInteger();
+
+        @SuppressWarnings("unchecked")
+        Limit(RateLimit rateLimit) {
+            this.rateLimit = rateLimit;
+            this.tokenBucket = rateLimit.getStrategy() == RateLimit.Strategy.TOKEN_BUCKET;
+            this.period = rateLimit.getPeriod();
+            this.uses = (int) Math.min(rateLimit.getUses(), COUNT_MASK);
+
+            this.stripes = new Map[STRIPES];
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new ConcurrentHashMap<>();
+            }
+        }
+
+        long tryAcquire(long key, long now) {
+            Map<Long, Bucket> stripe = stripes[stripeOf(key)];
+            sweepIfDue(now);
+
+            while (true) {
+                Bucket bucket = stripe.get(key);
+                if (bucket == null) {
+                    Bucket existing = stripe.putIfAbsent(key, new Bucket(firstUse(now)));
+                    if (existing == null) {
+                        return 0;
+                    }
+                    bucket = existing;
+                }
+
+                long state = bucket.get();
+                if (state == DEAD) {
+                    stripe.remove(key, bucket);
+                    continue;
+                }
+
+                long next = tokenBucket ? nextTokenBucket(state, now) : nextFixedWindow(state, now);
+                if (next < 0) {
+                    long wait = -next;
+                    return bucket.tell(now, now + wait) ? wait : -wait;
+                }
+                if (bucket.compareAndSet(state, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        private long firstUse(long now) {
+            return tokenBucket ? now + period : ((now / period) << COUNT_BITS) | 1;
+        }
+
+        /**
+         * @return the next state, or minus the time to wait if the use isn't allowed
+         */
+        private long nextFixedWindow(long state, long now) {
+            long window = now / period;
+            if ((state >>> COUNT_BITS) != window) {
+                return (window << COUNT_BITS) | 1;
+            }
+
+            long count = state & COUNT_MASK;
+            if (count >= uses) {
+                return -((window + 1) * period - now);
+            }
+            return state + 1;
+        }
+
+        /**
+         * Token buckets store the time at which the bucket would be full again, as in the generic
+         * cell rate algorithm.
+         *
+         * @return the next state, or minus the time to wait if the use isn't allowed
+         */
+        private long nextTokenBucket(long state, long now) {
+            long next = Math.max(state, now) + period;
+            long wait = next - now - uses * period;
+            if (wait > 0) {
+                return -wait;
+            }
+            return next;
+        }
+
+        private boolean isExpired(long state, long now) {
+            if (tokenBucket) {
+                return state <= now;
+            }
+            return (state >>> COUNT_BITS) < now / period;
+        }
+
+        private void sweepIfDue(long now) {
+            int count = operations.incrementAndGet();
+            if (count % SWEEP_INTERVAL != 0) {
+                return;
+            }
+
+            // sweep one stripe at a time, so no single use pays for sweeping everything
+            Map<Long, Bucket> stripe = stripes[(count / SWEEP_INTERVAL) & (STRIPES - 1)];
+            for (Map.Entry<Long, Bucket> entry : stripe.entrySet()) {
+                Bucket bucket = entry.getValue();
+                long state = bucket.get();
+                if (state != DEAD && isExpired(state, now) && bucket.compareAndSet(state, DEAD)) {
+                    stripe.remove(entry.getKey(), bucket);
+                }
+            }
+        }
+
+        private static int stripeOf(long key) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash >>> 60) & (STRIPES - 1);
+        }
+    }
+}
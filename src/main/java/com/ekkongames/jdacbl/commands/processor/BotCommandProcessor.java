@@ -0,0 +1,284 @@
+package com.ekkongames.jdacbl.commands.processor;
+
+import com.ekkongames.jdacbl.commands.BotCommand;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Generates a {@code BotCommands} class for each package containing commands annotated with
+ * {@link BotCommand}. The generated class holds the dispatch index and help order of the commands
+ * as constants, so that no reflection, sorting or indexing is needed when a bot is loaded.
+ * <p>
+ * Commands are registered in the order the compiler reports them, which is the order they are
+ * declared in within a file. That order decides which catch-all command runs first, so catch-all
+ * commands that depend on each other should be declared in the same file.
+ */
+@SupportedAnnotationTypes("com.ekkongames.jdacbl.commands.BotCommand")
+public class BotCommandProcessor extends AbstractProcessor {
+
+    private static final String GENERATED_CLASS = "BotCommands";
+
+    private static final String COMMAND_CLASS = "com.ekkongames.jdacbl.commands.Command";
+    private static final String COMMAND_INFO_CLASS = "com.ekkongames.jdacbl.commands.CommandInfo";
+    private static final String COMMAND_GROUP_BUILDER_CLASS = "com.ekkongames.jdacbl.commands.CommandGroup.Builder";
+    private static final String COMMAND_TABLE_CLASS = "com.ekkongames.jdacbl.commands.CommandTable";
+
+    // packages that already have a generated class
+    private final Set<String> generatedPackages = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Elements elements = processingEnv.getElementUtils();
+        TypeElement commandElement = elements.getTypeElement(COMMAND_CLASS);
+        TypeElement commandInfoElement = elements.getTypeElement(COMMAND_INFO_CLASS);
+        if (commandElement == null || commandInfoElement == null) {
+            return false;
+        }
+
+        // collect the valid commands in each package
+        Map<String, List<TypeElement>> commandsByPackage = new TreeMap<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(BotCommand.class)) {
+            if (isValidCommand(element, commandElement.asType(), commandInfoElement.asType())) {
+                TypeElement command = (TypeElement) element;
+                String packageName = elements.getPackageOf(command).getQualifiedName().toString();
+                commandsByPackage.computeIfAbsent(packageName, (String name) -> new ArrayList<>()).add(command);
+            }
+        }
+
+        for (Map.Entry<String, List<TypeElement>> entry : commandsByPackage.entrySet()) {
+            String packageName = entry.getKey();
+            List<TypeElement> commands = entry.getValue();
+            if (generatedPackages.contains(packageName)) {
+                error(commands.get(0), "Commands in package " + packageName + " were found in more than one round");
+                continue;
+            }
+            if (!hasUniqueNames(commands)) {
+                continue;
+            }
+            generatedPackages.add(packageName);
+
+            try {
+                writeCommands(packageName, commands);
+            } catch (IOException e) {
+                error(commands.get(0), "Failed to generate " + GENERATED_CLASS + ": " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private boolean isValidCommand(Element element, TypeMirror commandType, TypeMirror commandInfoType) {
+        Types types = processingEnv.getTypeUtils();
+
+        if (element.getKind() != ElementKind.CLASS) {
+            error(element, "@BotCommand can only be applied to classes");
+            return false;
+        }
+        if (element.getModifiers().contains(Modifier.ABSTRACT)) {
+            error(element, "@BotCommand can't be applied to an abstract class");
+            return false;
+        }
+        if (element.getModifiers().contains(Modifier.PRIVATE)
+                || (element.getEnclosingElement().getKind() != ElementKind.PACKAGE
+                && !element.getModifiers().contains(Modifier.STATIC))) {
+            error(element, "A @BotCommand class must be accessible from its package without an enclosing instance");
+            return false;
+        }
+        if (!types.isSubtype(types.erasure(element.asType()), types.erasure(commandType))) {
+            error(element, "A @BotCommand class must extend " + COMMAND_CLASS);
+            return false;
+        }
+        if (element.getAnnotation(BotCommand.class).names().length == 0) {
+            error(element, "A @BotCommand must have at least one name");
+            return false;
+        }
+
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(element.getEnclosedElements())) {
+            if (!constructor.getModifiers().contains(Modifier.PRIVATE)
+                    && constructor.getParameters().size() == 1
+                    && types.isSameType(constructor.getParameters().get(0).asType(), commandInfoType)) {
+                return true;
+            }
+        }
+        error(element, "A @BotCommand class must have a non-private constructor taking only a " + COMMAND_INFO_CLASS);
+        return false;
+    }
+
+    private boolean hasUniqueNames(List<TypeElement> commands) {
+        boolean unique = true;
+        Map<String, TypeElement> names = new HashMap<>();
+        for (TypeElement command : commands) {
+            for (String name : command.getAnnotation(BotCommand.class).names()) {
+                TypeElement existing = names.putIfAbsent(name, command);
+                if (existing != null && !name.isEmpty()) {
+                    error(command, "The name \"" + name + "\" is already used by " + existing.getQualifiedName());
+                    unique = false;
+                }
+            }
+        }
+        return unique;
+    }
+
+    private void writeCommands(String packageName, List<TypeElement> commands) throws IOException {
+        String className = packageName.isEmpty() ? GENERATED_CLASS : packageName + "." + GENERATED_CLASS;
+        Filer filer = processingEnv.getFiler();
+        JavaFileObject file = filer.createSourceFile(className, commands.toArray(new Element[0]));
+
+        // index the names the same way CommandTree does, so the group can use the index as-is
+        Map<String, List<Integer>> index = new LinkedHashMap<>();
+        List<Integer> catchAll = new ArrayList<>();
+        for (int i = 0; i < commands.size(); i++) {
+            for (String name : commands.get(i).getAnnotation(BotCommand.class).names()) {
+                if (name.isEmpty()) {
+                    catchAll.add(i);
+                    for (List<Integer> handlers : index.values()) {
+                        handlers.add(i);
+                    }
+                } else {
+                    index.computeIfAbsent(name, (String n) -> new ArrayList<>(catchAll)).add(i);
+                }
+            }
+        }
+
+        // list visible commands the way CommandGroup does, by role and then by name
+        List<Integer> helpOrder = new ArrayList<>();
+        for (int i = 0; i < commands.size(); i++) {
+            if (commands.get(i).getAnnotation(BotCommand.class).visible()) {
+                helpOrder.add(i);
+            }
+        }
+        helpOrder.sort(
+                Comparator.comparing((Integer i) -> commands.get(i).getAnnotation(BotCommand.class).auth())
+                        .thenComparing((Integer i) -> commands.get(i).getAnnotation(BotCommand.class).names()[0])
+        );
+
+        try (Writer writer = file.openWriter(); PrintWriter out = new PrintWriter(writer)) {
+            if (!packageName.isEmpty()) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("/**");
+            out.println(" * The commands in this package annotated with {@link com.ekkongames.jdacbl.commands.BotCommand}.");
+            out.println(" * Generated by " + getClass().getName() + "; do not edit.");
+            out.println(" */");
+            out.println("public final class " + GENERATED_CLASS + " {");
+            out.println();
+            out.println("    private static final String[] NAMES = {" + joinNames(index.keySet()) + "};");
+            out.println("    private static final int[][] HANDLERS = {" + joinHandlers(index.values()) + "};");
+            out.println("    private static final int[] CATCH_ALL = {" + join(catchAll) + "};");
+            out.println("    private static final int[] HELP_ORDER = {" + join(helpOrder) + "};");
+            out.println();
+            out.println("    private " + GENERATED_CLASS + "() {");
+            out.println("    }");
+            out.println();
+            out.println("    /**");
+            out.println("     * Creates every annotated command in this package, along with its dispatch index and help order.");
+            out.println("     *");
+            out.println("     * @return the commands, in the order they were declared");
+            out.println("     */");
+            out.println("    public static " + COMMAND_TABLE_CLASS + " createTable() {");
+            out.println("        return new " + COMMAND_TABLE_CLASS + "(new " + COMMAND_CLASS + "[]{");
+            for (TypeElement command : commands) {
+                writeCommand(out, command);
+            }
+            out.println("        }, NAMES, HANDLERS, CATCH_ALL, HELP_ORDER);");
+            out.println("    }");
+            out.println();
+            out.println("    /**");
+            out.println("     * Adds every annotated command in this package to a command group.");
+            out.println("     *");
+            out.println("     * @param builder the builder for the command group");
+            out.println("     * @return the builder for method call chaining");
+            out.println("     */");
+            out.println("    public static " + COMMAND_GROUP_BUILDER_CLASS + " addTo(" + COMMAND_GROUP_BUILDER_CLASS + " builder) {");
+            out.println("        return builder.add(createTable());");
+            out.println("    }");
+            out.println("}");
+        }
+    }
+
+    private String joinNames(Collection<String> names) {
+        Elements elements = processingEnv.getElementUtils();
+        StringBuilder joined = new StringBuilder();
+        for (String name : names) {
+            joined.append(joined.length() == 0 ? "" : ", ").append(elements.getConstantExpression(name));
+        }
+        return joined.toString();
+    }
+
+    private static String joinHandlers(Collection<List<Integer>> handlers) {
+        StringBuilder joined = new StringBuilder();
+        for (List<Integer> positions : handlers) {
+            joined.append(joined.length() == 0 ? "{" : ", {").append(join(positions)).append("}");
+        }
+        return joined.toString();
+    }
+
+    private static String join(List<Integer> positions) {
+        StringBuilder joined = new StringBuilder();
+        for (int position : positions) {
+            joined.append(joined.length() == 0 ? "" : ", ").append(position);
+        }
+        return joined.toString();
+    }
+
+    private void writeCommand(PrintWriter out, TypeElement command) {
+        Elements elements = processingEnv.getElementUtils();
+        BotCommand annotation = command.getAnnotation(BotCommand.class);
+
+        StringBuilder names = new StringBuilder();
+        for (String name : annotation.names()) {
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            names.append(elements.getConstantExpression(name));
+        }
+
+        out.println("                new " + command.getQualifiedName() + "(new " + COMMAND_INFO_CLASS + ".Builder()");
+        out.println("                        .names(" + names + ")");
+        out.println("                        .summary(" + elements.getConstantExpression(annotation.summary()) + ")");
+        out.println("                        .description(" + elements.getConstantExpression(annotation.description()) + ")");
+        out.println("                        .usage(" + elements.getConstantExpression(annotation.usage()) + ")");
+        out.println("                        .visible(" + annotation.visible() + ")");
+        out.println("                        .auth(" + elements.getConstantExpression(annotation.auth()) + ")");
+        out.println("                        .build()),");
+    }
+
+    private void error(Element element, String message) {
+        Messager messager = processingEnv.getMessager();
+        messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
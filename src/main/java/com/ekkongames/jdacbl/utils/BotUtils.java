@@ -1,75 +1,75 @@
 package com.ekkongames.jdacbl.utils;
 
 import com.ekkongames.jdacbl.bot.Bot;
+import com.ekkongames.jdacbl.commands.CommandContext;
 import com.ekkongames.jdacbl.commands.CommandInput;
 import net.dv8tion.jda.api.entities.*;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
-import net.dv8tion.jda.api.requests.RestAction;
 
 import java.awt.Color;
-import java.util.Objects;
-import java.util.function.BiFunction;
 
 /**
+ * Static access to the {@link CommandContext} of the message being handled on the current thread.
+ * Commands should prefer {@link CommandInput#getContext()}, which also works from other threads.
+ *
  * @author Julian Dominguez-Schatz <jfdoming at ekkon.dx.am>
  */
 public final class BotUtils {
 
-    private static MessageReceivedEvent event;
-    private static boolean usingStaticGuild;
-    private static Guild guild;
-    private static Member self;
-    private static User author;
-    private static String authorMention;
-    private static MessageChannel channel;
+    // the context bound to the current thread by begin()
+    private static final ThreadLocal<CommandContext> context = ThreadLocal.withInitial(() -> CommandContext.NONE);
 
+    private static volatile boolean usingStaticGuild;
+    private static volatile Guild staticGuild;
+
+    /**
+     * Binds an event to the current thread, so that it is used by the other methods of this class.
+     *
+     * @param currentEvent the event being handled
+     */
     public static void begin(MessageReceivedEvent currentEvent) {
-        event = currentEvent;
-
-        if (!usingStaticGuild) {
-            guild = event.getGuild();
-        }
-        self = guild.getSelfMember();
-        channel = event.getChannel();
-        author = event.getAuthor();
-        authorMention = getMemberName(author);
+        context.set(new CommandContext(currentEvent, resolveGuild(currentEvent.getGuild())));
     }
 
     public static void begin(Guild guild, User author, MessageChannel channel) {
-        event = null;
-        if (!usingStaticGuild) {
-            BotUtils.guild = guild;
-        }
-        self = guild.getSelfMember();
-        BotUtils.channel = channel;
-        BotUtils.author = author;
-        authorMention = null;
+        context.set(new CommandContext(resolveGuild(guild), author, channel));
     }
 
+    private static Guild resolveGuild(Guild guild) {
+        Guild staticGuild = BotUtils.staticGuild;
+        return (usingStaticGuild && staticGuild != null) ? staticGuild : guild;
+    }
+
+    /**
+     * Unbinds the current event from the current thread, sending any replies still waiting to be merged.
+     */
     public static void end() {
-        authorMention = null;
-        author = null;
-        channel = null;
-        self = null;
-        if (!usingStaticGuild) {
-            guild = null;
-        }
-        event = null;
+        getContext().flush();
+        context.remove();
+    }
+
+    /**
+     * @return the context bound to the current thread, or {@link CommandContext#NONE} if there is none
+     */
+    public static CommandContext getContext() {
+        return context.get();
     }
 
     /**
      * @return the event that is currently bound
      */
     public static MessageReceivedEvent getEvent() {
-        return event;
+        return getContext().getEvent();
     }
 
     /**
      * Toggles whether to update the guild upon receiving an event.
      */
     public static void toggleStaticGuild() {
+        CommandContext current = getContext();
         usingStaticGuild = !isUsingStaticGuild()
-                || (event != null && !guild.getId().equals(event.getGuild().getId()));
+                || (current.getEvent() != null && !current.getGuild().getId().equals(current.getEvent().getGuild().getId()));
+        staticGuild = usingStaticGuild ? current.getGuild() : null;
     }
 
     /**
@@ -83,294 +83,119 @@ public final class BotUtils {
      * @return the currently bound guild
      */
     public static Guild getGuild() {
-        return guild;
+        return getContext().getGuild();
     }
 
     /**
      * @return the member representing the bot user on the current guild
      */
     public static Member getSelf() {
-        return self;
+        return getContext().getSelf();
     }
 
     /**
      * @return the user who sent the current message
      */
     public static User getAuthor() {
-        return author;
+        return getContext().getAuthor();
     }
 
     /**
      * @return a String representing a mention of the user who sent the current message
      */
     public static String getAuthorMention() {
-        return authorMention;
+        return getContext().getAuthorMention();
     }
 
     /**
      * @return a MessageChannel representing the channel the current message was sent in
      */
     public static MessageChannel getMessageChannel() {
-        return channel;
+        return getContext().getMessageChannel();
     }
 
     /**
-     * @param target     the user who sent the command
-     * @param roleString a String representing the role to check for
-     * @return whether the user has permissions higher or equal to the provided role
+     * @see CommandContext#checkPermission(User, String)
      */
     public static boolean checkPermission(User target, String roleString) {
-        Role role = PrimitiveUtils.get(guild.getRolesByName(roleString, false));
-        if (role == null) {
-            return false;
-        }
-
-        boolean higherInRoleOrder = guild.getMember(target).canInteract(role);
-        boolean hasTheRole = guild.getMember(target).getRoles().contains(role);
-
-        return higherInRoleOrder || hasTheRole;
-    }
-
-    private static String getMemberName(User target) {
-        return Objects.requireNonNull(guild.retrieveMember(target).complete()).getAsMention();
-    }
-
-    private static boolean canInteractWith(Member target) {
-        if (!self.canInteract(target)) {
-            sendMessage("I don't have permission to modify the user " + target.getAsMention());
-            return false;
-        }
-        return true;
-    }
-
-    private static boolean modifyTargetRoles(User targetUser, String roleString, BiFunction<Member, Role, RestAction<Void>> consumer) {
-        Member target = guild.getMember(targetUser);
-
-        if (!canInteractWith(target)) {
-            return false;
-        }
-
-        Role role = PrimitiveUtils.get(guild.getRolesByName(roleString, false));
-        if (role == null) {
-            sendMessage("The role \"" + roleString + "\" doesn't exist");
-            return false;
-        }
-
-        consumer.apply(target, role)
-                .queue(
-                        null,
-                        (t) -> sendMessage("Failed to modify roles of the user " + target.getAsMention()));
-        return true;
+        return getContext().checkPermission(target, roleString);
     }
 
+    /**
+     * @see CommandContext#getTargetUser(CommandInput, int)
+     */
     public static User getTargetUser(CommandInput input, int index) {
-        // make sure the user specified a valid target
-        User target = PrimitiveUtils.get(input.getMentionedUsers());
-        if (target == null) {
-            try {
-                long targetID = Long.parseLong(input.getToken(index));
-                Member member = guild.getMemberById(targetID);
-
-                if (member == null) {
-                    return null;
-                }
-                return member.getUser();
-            } catch (NumberFormatException e) {
-                return null;
-            }
-        }
-        return target;
+        return getContext().getTargetUser(input, index);
     }
 
     /**
-     * Adds the specified role to the target user.
-     *
-     * @param targetUser the user to add the role to
-     * @param roleString the role to add
-     * @return whether the role was successfully added to the user
+     * @see CommandContext#addRoleToUser(User, String)
      */
     public static boolean addRoleToUser(User targetUser, String roleString) {
-        return modifyTargetRoles(
-                targetUser,
-                roleString,
-                (target, role) -> guild.addRoleToMember(target, role)
-        );
+        return getContext().addRoleToUser(targetUser, roleString);
     }
 
     /**
-     * Removes the specified role from the target user.
-     *
-     * @param targetUser the user to remove the role from
-     * @param roleString the role to remove
-     * @return whether the role was successfully removed from the user
+     * @see CommandContext#removeRoleFromUser(User, String)
      */
     public static boolean removeRoleFromUser(User targetUser, String roleString) {
-        return modifyTargetRoles(
-                targetUser,
-                roleString,
-                (target, role) -> guild.removeRoleFromMember(target, role)
-        );
+        return getContext().removeRoleFromUser(targetUser, roleString);
     }
 
     /**
-     * Modify the target role to change its @mentionable status.
-     *
-     * @param roleString  the role to modify
-     * @param mentionable whether the specified role should be @mentionable
-     * @return whether the role was successfully modified
+     * @see CommandContext#setRoleMentionable(String, boolean)
      */
     public static boolean setRoleMentionable(String roleString, boolean mentionable) {
-        Role role = PrimitiveUtils.get(guild.getRolesByName(roleString, false));
-        if (role == null) {
-            sendMessage("The role \"" + roleString + "\" doesn't exist");
-            return false;
-        }
-
-        role.getManager().setMentionable(mentionable)
-                .queue(
-                        null,
-                        (t) -> sendMessage("Failed to modify the role " + roleString)
-                );
-        return true;
+        return getContext().setRoleMentionable(roleString, mentionable);
     }
 
     /**
-     * Modify the target role to change its colour.
-     *
-     * @param roleString the role to modify
-     * @param colour     the new colour of the role
-     * @return whether the role was successfully modified
+     * @see CommandContext#setRoleColour(String, Color)
      */
     public static boolean setRoleColour(String roleString, Color colour) {
-        Role role = PrimitiveUtils.get(guild.getRolesByName(roleString, false));
-        if (role == null) {
-            sendMessage("The role \"" + roleString + "\" doesn't exist");
-            return false;
-        }
-
-        role.getManager().setColor(colour)
-                .queue(
-                        null,
-                        (t) -> sendMessage("Failed to modify the role " + roleString)
-                );
-
-        return true;
+        return getContext().setRoleColour(roleString, colour);
     }
 
     /**
-     * Modify the target role to change its name.
-     *
-     * @param roleString    the role to modify
-     * @param newRoleString the new name of the role
-     * @return whether the role was successfully modified
+     * @see CommandContext#setRoleName(String, String)
      */
     public static boolean setRoleName(String roleString, String newRoleString) {
-        Role role = PrimitiveUtils.get(guild.getRolesByName(roleString, false));
-        if (role == null) {
-            sendMessage("The role \"" + roleString + "\" doesn't exist");
-            return false;
-        }
-
-        role.getManager().setName(newRoleString)
-                .queue(
-                        null,
-                        (t) -> sendMessage("Failed to modify the role " + roleString)
-                );
-
-        return true;
+        return getContext().setRoleName(roleString, newRoleString);
     }
 
     /**
-     * @param roleString the name of the role to create
-     * @return whether the role was successfully created
+     * @see CommandContext#makeRole(String)
      */
     public static boolean makeRole(String roleString) {
-        guild.createRole().setName(roleString)
-                .queue(
-                        null,
-                        (t) -> sendMessage("Failed to create the role " + roleString)
-                );
-        return true;
+        return getContext().makeRole(roleString);
     }
 
     /**
-     * Moves the target user to the specified voice channel.
-     *
-     * @param targetUser  the user to move
-     * @param channelName the voice channel to move the user to
-     * @return whether the user was sucessfully moved
+     * @see CommandContext#moveUserToVoiceChannel(User, String)
      */
     public static boolean moveUserToVoiceChannel(User targetUser, String channelName) {
-        // determine the channel to move the target to
-        VoiceChannel vChannel = PrimitiveUtils.get(guild.getVoiceChannelsByName(channelName, false));
-        if (vChannel == null) {
-            sendMessage("The voice channel \"" + channelName + "\" doesn't exist");
-            return false;
-        }
-
-        // move the target to the new voice channel
-        try {
-            guild.moveVoiceMember(guild.getMember(targetUser), vChannel).queue();
-        } catch (IllegalStateException e) {
-            sendMessage("You cannot move a user who isn't in a voice channel");
-            return false;
-        }
-        return true;
+        return getContext().moveUserToVoiceChannel(targetUser, channelName);
     }
 
     /**
-     * Sets the nickname for the target user in the current server.
-     *
-     * @param targetUser the user to change the nickname of
-     * @param nickname   the nickname to use
-     * @return whether the user's nickname was successfully changed
+     * @see CommandContext#setUserNickname(User, String)
      */
     public static boolean setUserNickname(User targetUser, String nickname) {
-        if (targetUser == null) {
-            Log.d("BotUtils:setUserNickname", "NPE");
-            return false;
-        }
-
-        Member targetMember = guild.getMember(targetUser);
-        if (!self.canInteract(targetMember)) {
-            sendMessage("You do not have permission to change the nickname of someone with higher privileges than yourself");
-            return false;
-        }
-
-        targetMember.modifyNickname(nickname)
-                .queue(
-                        null,
-                        (t) -> sendMessage("Failed to modify the nickname of the user " + targetUser.getAsMention()));
-        return true;
+        return getContext().setUserNickname(targetUser, nickname);
     }
 
     /**
-     * Posts a message in the channel of the current event. The message will contain an @mention
-     * for the author of the trigger message.
-     *
-     * @param message the message to send
+     * @see CommandContext#sendMessage(String)
      */
     public static void sendMessage(String message) {
-        if (event == null) {
-            Log.i("Bot", message + "!");
-        } else if (authorMention == null) {
-            sendPlainMessage(message + "!");
-        } else {
-            sendPlainMessage(message + ", " + authorMention + "!");
-        }
+        getContext().sendMessage(message);
     }
 
     /**
-     * Posts a message in the channel of the current event.
-     *
-     * @param message the message to send
+     * @see CommandContext#sendPlainMessage(String)
      */
     public static void sendPlainMessage(String message) {
-        if (channel != null) {
-            channel.sendMessage(message).queue(result -> {});
-        } else {
-            Log.i("Bot", message);
-        }
+        getContext().sendPlainMessage(message);
     }
 
     /**
@@ -0,0 +1,162 @@
+package com.ekkongames.jdacbl.utils;
+
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.ISnowflake;
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.entities.VoiceChannel;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Finds roles and voice channels by name without scanning every role or channel of a guild.
+ * Each guild's names are indexed when first looked up, and the index is rebuilt after JDA reports
+ * that a role or channel was created, deleted, renamed or moved.
+ * <p>
+ * As with {@link Guild#getRolesByName(String, boolean)}, names are case-sensitive, and if several
+ * roles or channels share a name, the one listed first by JDA is found.
+ * <p>
+ * The position of each role in the role hierarchy is indexed as well, so roles can be compared
+ * without JDA sorting the guild's roles.
+ */
+public final class GuildIndex {
+
+    private static final Map<Long, GuildIndex> indexes = new ConcurrentHashMap<>();
+
+    private final Index<Role> roles = new Index<>(Guild::getRoles, Role::getName);
+    private final Index<VoiceChannel> voiceChannels = new Index<>(Guild::getVoiceChannels, VoiceChannel::getName);
+
+    private GuildIndex() {
+    }
+
+    private static GuildIndex of(Guild guild) {
+        return indexes.computeIfAbsent(guild.getIdLong(), (Long id) -> new GuildIndex());
+    }
+
+    /**
+     * @param guild the guild to search
+     * @param name  the name of the role
+     * @return the role with the specified name, or null if there is none
+     */
+    public static Role getRoleByName(Guild guild, String name) {
+        return of(guild).roles.get(guild, name);
+    }
+
+    /**
+     * Returns the position of a role in the role hierarchy. Unlike {@link Role#getPosition()}, this
+     * is only meant to be compared with the position of other roles of the same guild.
+     *
+     * @param guild the guild of the role
+     * @param role  the role
+     * @return the position of the role, higher for higher roles, or -1 if the guild doesn't have the role
+     */
+    public static int getRolePosition(Guild guild, Role role) {
+        return of(guild).roles.getPosition(guild, role);
+    }
+
+    /**
+     * @param guild the guild to search
+     * @param name  the name of the voice channel
+     * @return the voice channel with the specified name, or null if there is none
+     */
+    public static VoiceChannel getVoiceChannelByName(Guild guild, String name) {
+        return of(guild).voiceChannels.get(guild, name);
+    }
+
+    /**
+     * Marks the role names of a guild as changed.
+     *
+     * @param guild the guild whose roles changed
+     */
+    public static void invalidateRoles(Guild guild) {
+        GuildIndex index = indexes.get(guild.getIdLong());
+        if (index != null) {
+            index.roles.invalidate();
+        }
+    }
+
+    /**
+     * Marks the voice channel names of a guild as changed.
+     *
+     * @param guild the guild whose voice channels changed
+     */
+    public static void invalidateVoiceChannels(Guild guild) {
+        GuildIndex index = indexes.get(guild.getIdLong());
+        if (index != null) {
+            index.voiceChannels.invalidate();
+        }
+    }
+
+    /**
+     * Forgets everything indexed for a guild, such as after the bot leaves it.
+     *
+     * @param guild the guild to forget
+     */
+    public static void remove(Guild guild) {
+        indexes.remove(guild.getIdLong());
+    }
+
+    private static final class Index<T extends ISnowflake> {
+        private final Function<Guild, List<T>> entities;
+        private final Function<T, String> names;
+
+        // bumped whenever the guild reports a change, so an index built before the change is rebuilt
+        private final AtomicLong generation = new AtomicLong();
+        private volatile Snapshot<T> snapshot;
+
+        Index(Function<Guild, List<T>> entities, Function<T, String> names) {
+            this.entities = entities;
+            this.names = names;
+        }
+
+        T get(Guild guild, String name) {
+            return current(guild).byName.get(name);
+        }
+
+        int getPosition(Guild guild, T entity) {
+            Integer position = current(guild).positions.get(entity.getIdLong());
+            return position == null ? -1 : position;
+        }
+
+        private Snapshot<T> current(Guild guild) {
+            Snapshot<T> current = snapshot;
+            long currentGeneration = generation.get();
+            if (current == null || current.generation != currentGeneration) {
+                List<T> all = entities.apply(guild);
+                Map<String, T> byName = new HashMap<>();
+                Map<Long, Integer> positions = new HashMap<>();
+                for (int i = 0; i < all.size(); i++) {
+                    T entity = all.get(i);
+                    byName.putIfAbsent(names.apply(entity), entity);
+
+                    // JDA lists the highest first
+                    positions.put(entity.getIdLong(), all.size() - 1 - i);
+                }
+                current = new Snapshot<>(currentGeneration, Collections.unmodifiableMap(byName), Collections.unmodifiableMap(positions));
+                snapshot = current;
+            }
+            return current;
+        }
+
+        void invalidate() {
+            generation.incrementAndGet();
+        }
+    }
+
+    private static final class Snapshot<T> {
+        private final long generation;
+        private final Map<String, T> byName;
+        private final Map<Long, Integer> positions;
+
+        Snapshot(long generation, Map<String, T> byName, Map<Long, Integer> positions) {
+            this.generation = generation;
+            this.byName = byName;
+            this.positions = positions;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.ekkongames.jdacbl.utils;
+
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.User;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Retrieves members from Discord, sharing requests between callers. While a member is being
+ * retrieved, anyone else asking for the same member waits on the same request, and once it
+ * completes the member is remembered for a few seconds, so a burst of lookups only makes one
+ * request. Failed requests aren't remembered.
+ */
+public final class MemberRetriever {
+
+    private static final long TTL_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final int SWEEP_INTERVAL = 256;
+
+    private static final MemberRetriever instance = new MemberRetriever();
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    // metrics
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong fetches = new AtomicLong();
+
+    private MemberRetriever() {
+    }
+
+    /**
+     * @return the retriever shared by the library
+     */
+    public static MemberRetriever getInstance() {
+        return instance;
+    }
+
+    /**
+     * Retrieves a member, or joins a request for the member that is already in flight.
+     *
+     * @param guild the guild of the member
+     * @param user  the user to retrieve the member of
+     * @return a future completed with the member
+     */
+    public CompletableFuture<Member> retrieve(Guild guild, User user) {
+        requests.incrementAndGet();
+        Key key = new Key(guild.getIdLong(), user.getIdLong());
+
+        while (true) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (!entry.member.isDone()) {
+                    coalesced.incrementAndGet();
+                    return entry.member.thenApply(Function.identity());
+                }
+                if (!entry.member.isCompletedExceptionally() && System.nanoTime() - entry.expiresAt < 0) {
+                    hits.incrementAndGet();
+                    return entry.member.thenApply(Function.identity());
+                }
+                entries.remove(key, entry);
+            }
+
+            Entry created = new Entry();
+            if (entries.putIfAbsent(key, created) != null) {
+                // someone else started a request first, so join it instead
+                continue;
+            }
+
+            fetches.incrementAndGet();
+            sweepIfDue();
+            RestScheduler.getInstance()
+                    .submit(RestScheduler.Priority.INTERACTIVE, "members:" + guild.getId(), guild.retrieveMember(user))
+                    .whenComplete((Member member, Throwable t) -> {
+                        if (t == null) {
+                            created.expiresAt = System.nanoTime() + TTL_NANOS;
+                            created.member.complete(member);
+                        } else {
+                            entries.remove(key, created);
+                            created.member.completeExceptionally(t);
+                        }
+                    });
+            return created.member.thenApply(Function.identity());
+        }
+    }
+
+    /**
+     * Retrieves a member, blocking until it has been retrieved.
+     *
+     * @param guild the guild of the member
+     * @param user  the user to retrieve the member of
+     * @return the member, or null if it couldn't be retrieved
+     */
+    public Member complete(Guild guild, User user) {
+        try {
+            return retrieve(guild, user).join();
+        } catch (CompletionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Forgets a member, such as after they leave the guild.
+     *
+     * @param guild the guild of the member
+     * @param user  the member to forget
+     */
+    public void invalidate(Guild guild, User user) {
+        entries.remove(new Key(guild.getIdLong(), user.getIdLong()));
+    }
+
+    /**
+     * Forgets every member of a guild, such as after the bot leaves it.
+     *
+     * @param guild the guild to forget
+     */
+    public void remove(Guild guild) {
+        entries.keySet().removeIf((Key key) -> key.guildId == guild.getIdLong());
+    }
+
+    private void sweepIfDue() {
+        if (fetches.get() % SWEEP_INTERVAL != 0) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        entries.values().removeIf((Entry entry) -> entry.member.isDone() && now - entry.expiresAt >= 0);
+    }
+
+    /**
+     * @return the number of members ever asked for
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return the number of members found among those recently retrieved
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of members that joined a request already in flight
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return the number of requests made to Discord
+     */
+    public long getFetchCount() {
+        return fetches.get();
+    }
+
+    /**
+     * @return the fraction of members asked for that didn't need a request of their own
+     */
+    public double getHitRate() {
+        long requests = this.requests.get();
+        return requests == 0 ? 0 : (double) (hits.get() + coalesced.get()) / requests;
+    }
+
+    private static final class Key {
+        private final long guildId;
+        private final long userId;
+
+        Key(long guildId, long userId) {
+            this.guildId = guildId;
+            this.userId = userId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return guildId == key.guildId && userId == key.userId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(guildId * 31 + userId);
+        }
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<Member> member = new CompletableFuture<>();
+        // only read once the member has been retrieved
+        private volatile long expiresAt;
+    }
+}
@@ -0,0 +1,150 @@
+package com.ekkongames.jdacbl.utils;
+
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.entities.User;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers whether members are allowed to use commands that require a role, so the check is only
+ * worked out again after JDA reports that the member's roles or the role hierarchy changed.
+ * <p>
+ * A member is allowed if they have the role, if their highest role is above it, or if they own
+ * the guild, as with {@link Member#canInteract(Role)}.
+ */
+public final class PermissionCache {
+
+    private static final Map<Long, PermissionCache> caches = new ConcurrentHashMap<>();
+
+    // bumped whenever the role hierarchy of the guild changes
+    private final AtomicLong generation = new AtomicLong();
+    private final Map<Long, Decisions> members = new ConcurrentHashMap<>();
+
+    private PermissionCache() {
+    }
+
+    private static PermissionCache of(Guild guild) {
+        return caches.computeIfAbsent(guild.getIdLong(), (Long id) -> new PermissionCache());
+    }
+
+    /**
+     * @param guild  the guild to check in
+     * @param target the user to check
+     * @param role   the role the user needs
+     * @return whether the user has the role or a higher one
+     */
+    public static boolean hasPermission(Guild guild, User target, Role role) {
+        PermissionCache cache = of(guild);
+        Decisions decisions = cache.members.computeIfAbsent(target.getIdLong(), (Long id) -> new Decisions());
+
+        // read the generations first, so a change made while deciding isn't missed
+        long guildGeneration = cache.generation.get();
+        long memberGeneration = decisions.generation.get();
+
+        Decision decision = decisions.byRole.get(role.getIdLong());
+        if (decision != null && decision.guildGeneration == guildGeneration && decision.memberGeneration == memberGeneration) {
+            return decision.allowed;
+        }
+
+        Member member = guild.getMember(target);
+        if (member == null) {
+            return false;
+        }
+
+        boolean allowed = decide(guild, member, role);
+        decisions.byRole.put(role.getIdLong(), new Decision(guildGeneration, memberGeneration, allowed));
+        return allowed;
+    }
+
+    private static boolean decide(Guild guild, Member member, Role role) {
+        if (member.isOwner()) {
+            return true;
+        }
+
+        List<Role> roles = member.getRoles();
+        if (roles.isEmpty()) {
+            return false;
+        }
+
+        // JDA lists the member's highest role first
+        if (GuildIndex.getRolePosition(guild, roles.get(0)) > GuildIndex.getRolePosition(guild, role)) {
+            return true;
+        }
+        return roles.contains(role);
+    }
+
+    /**
+     * Marks the roles of a member as changed.
+     *
+     * @param guild the guild of the member
+     * @param user  the member whose roles changed
+     */
+    public static void invalidateMember(Guild guild, User user) {
+        PermissionCache cache = caches.get(guild.getIdLong());
+        if (cache == null) {
+            return;
+        }
+
+        Decisions decisions = cache.members.get(user.getIdLong());
+        if (decisions != null) {
+            decisions.generation.incrementAndGet();
+        }
+    }
+
+    /**
+     * Forgets a member, such as after they leave the guild.
+     *
+     * @param guild the guild of the member
+     * @param user  the member to forget
+     */
+    public static void removeMember(Guild guild, User user) {
+        PermissionCache cache = caches.get(guild.getIdLong());
+        if (cache != null) {
+            cache.members.remove(user.getIdLong());
+        }
+    }
+
+    /**
+     * Marks the role hierarchy of a guild as changed.
+     *
+     * @param guild the guild whose roles changed
+     */
+    public static void invalidate(Guild guild) {
+        PermissionCache cache = caches.get(guild.getIdLong());
+        if (cache != null) {
+            cache.generation.incrementAndGet();
+        }
+    }
+
+    /**
+     * Forgets everything cached for a guild, such as after the bot leaves it.
+     *
+     * @param guild the guild to forget
+     */
+    public static void remove(Guild guild) {
+        caches.remove(guild.getIdLong());
+    }
+
+    private static final class Decisions {
+        // bumped whenever the member's roles change
+        private final AtomicLong generation = new AtomicLong();
+        private final Map<Long, Decision> byRole = new ConcurrentHashMap<>();
+    }
+
+    private static final class Decision {
+        private final long guildGeneration;
+        private final long memberGeneration;
+        private final boolean allowed;
+
+        Decision(long guildGeneration, long memberGeneration, boolean allowed) {
+            this.guildGeneration = guildGeneration;
+            this.memberGeneration = memberGeneration;
+            this.allowed = allowed;
+        }
+    }
+}
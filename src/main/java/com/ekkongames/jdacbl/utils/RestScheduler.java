@@ -0,0 +1,296 @@
+package com.ekkongames.jdacbl.utils;
+
+import net.dv8tion.jda.api.requests.RestAction;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Decides the order in which requests are handed to JDA, so that replies to users aren't stuck
+ * behind bulk work such as giving a role to every member of a guild. Interactive requests are
+ * handed to JDA right away. Only a few other requests are handed to JDA at once; the rest wait
+ * here, ordered by {@link Priority}.
+ * <p>
+ * Bulk requests can only use part of the requests in flight, so background requests aren't stuck
+ * behind them either. Requests are grouped by route (such as the channel a message is sent to),
+ * and each route only has a couple of requests in flight, so one busy route doesn't use every slot.
+ */
+public final class RestScheduler {
+
+    /**
+     * How urgent a request is. Requests of a higher priority are always handed to JDA first.
+     */
+    public enum Priority {
+        /**
+         * Requests a user is waiting on, such as replies. These never wait for other requests.
+         */
+        INTERACTIVE,
+        /**
+         * Requests made by commands that a user isn't watching closely, such as changing roles.
+         */
+        BACKGROUND,
+        /**
+         * Large batches of requests, such as changing the roles of every member.
+         */
+        BULK
+    }
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private static final int MAX_IN_FLIGHT = 8;
+    private static final int MAX_IN_FLIGHT_PER_ROUTE = 2;
+
+    private static final RestScheduler instance = new RestScheduler(MAX_IN_FLIGHT);
+
+    private final int maxInFlight;
+    // the requests in flight a priority can start a request with; interactive requests aren't limited
+    private final int[] limits;
+
+    // for each priority, the waiting requests of each route, with routes taking turns
+    private final List<LinkedHashMap<String, ArrayDeque<Task<?>>>> queues;
+    private final Map<String, Integer> routeInFlight;
+    private int inFlight;
+
+    // metrics, indexed by priority
+    private final int[] queued;
+    private final long[] submitted;
+    private final long[] succeeded;
+    private final long[] failed;
+    private final long[] totalWaitNanos;
+
+    RestScheduler(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        this.limits = new int[]{Integer.MAX_VALUE, maxInFlight, Math.max(1, maxInFlight / 2)};
+
+        this.queues = new ArrayList<>(PRIORITIES.length);
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            queues.add(new LinkedHashMap<>());
+        }
+        this.routeInFlight = new HashMap<>();
+
+        this.queued = new int[PRIORITIES.length];
+        this.submitted = new long[PRIORITIES.length];
+        this.succeeded = new long[PRIORITIES.length];
+        this.failed = new long[PRIORITIES.length];
+        this.totalWaitNanos = new long[PRIORITIES.length];
+    }
+
+    /**
+     * @return the scheduler shared by the library
+     */
+    public static RestScheduler getInstance() {
+        return instance;
+    }
+
+    /**
+     * Queues a request to be handed to JDA once requests of a higher priority have been.
+     * Interactive requests are handed to JDA right away, which still respects Discord's rate limits.
+     *
+     * @param priority how urgent the request is
+     * @param route    the route of the request, such as {@code "messages:<channel id>"}
+     * @param action   the request
+     * @param <T>      the type of the result of the request
+     * @return a future completed with the result of the request
+     */
+    public <T> CompletableFuture<T> submit(Priority priority, String route, RestAction<T> action) {
+        Task<T> task = new Task<>(priority, route, action);
+        if (priority == Priority.INTERACTIVE) {
+            synchronized (this) {
+                submitted[priority.ordinal()]++;
+            }
+            task.start();
+            return task.result;
+        }
+
+        synchronized (this) {
+            queues.get(priority.ordinal()).computeIfAbsent(route, (String r) -> new ArrayDeque<>()).add(task);
+            queued[priority.ordinal()]++;
+            submitted[priority.ordinal()]++;
+        }
+        drain();
+        return task.result;
+    }
+
+    private void drain() {
+        while (true) {
+            List<Task<?>> ready = new ArrayList<>();
+            synchronized (this) {
+                Task<?> task;
+                while ((task = next()) != null) {
+                    int p = task.priority.ordinal();
+                    queued[p]--;
+                    totalWaitNanos[p] += System.nanoTime() - task.queuedAt;
+                    inFlight++;
+                    routeInFlight.merge(task.route, 1, Integer::sum);
+                    ready.add(task);
+                }
+            }
+
+            // JDA may do some work when a request is submitted, so do it outside the lock
+            boolean released = false;
+            for (Task<?> task : ready) {
+                if (!task.start()) {
+                    released = true;
+                }
+            }
+
+            // requests that completed right away freed their slots, so other requests can start
+            if (!released) {
+                return;
+            }
+        }
+    }
+
+    private Task<?> next() {
+        for (Priority priority : PRIORITIES) {
+            if (inFlight >= limits[priority.ordinal()]) {
+                continue;
+            }
+
+            LinkedHashMap<String, ArrayDeque<Task<?>>> routes = queues.get(priority.ordinal());
+            Iterator<Map.Entry<String, ArrayDeque<Task<?>>>> iterator = routes.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, ArrayDeque<Task<?>>> entry = iterator.next();
+                if (routeInFlight.getOrDefault(entry.getKey(), 0) >= MAX_IN_FLIGHT_PER_ROUTE) {
+                    continue;
+                }
+
+                ArrayDeque<Task<?>> tasks = entry.getValue();
+                Task<?> task = tasks.poll();
+
+                // move the route to the back, so the other routes get a turn
+                iterator.remove();
+                if (!tasks.isEmpty()) {
+                    routes.put(entry.getKey(), tasks);
+                }
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private synchronized void release(Task<?> task, boolean success) {
+        if (task.priority != Priority.INTERACTIVE) {
+            inFlight--;
+            routeInFlight.computeIfPresent(task.route, (String route, Integer count) -> count == 1 ? null : count - 1);
+        }
+        if (success) {
+            succeeded[task.priority.ordinal()]++;
+        } else {
+            failed[task.priority.ordinal()]++;
+        }
+    }
+
+    /**
+     * @return the number of background and bulk requests handed to JDA and not yet completed
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the most background and bulk requests that are handed to JDA at once
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @param priority the priority to check
+     * @return the number of requests of the priority waiting to be handed to JDA
+     */
+    public synchronized int getQueueSize(Priority priority) {
+        return queued[priority.ordinal()];
+    }
+
+    /**
+     * @param priority the priority to check
+     * @return the number of requests of the priority ever submitted
+     */
+    public synchronized long getSubmittedCount(Priority priority) {
+        return submitted[priority.ordinal()];
+    }
+
+    /**
+     * @param priority the priority to check
+     * @return the number of requests of the priority that succeeded
+     */
+    public synchronized long getSucceededCount(Priority priority) {
+        return succeeded[priority.ordinal()];
+    }
+
+    /**
+     * @param priority the priority to check
+     * @return the number of requests of the priority that failed
+     */
+    public synchronized long getFailedCount(Priority priority) {
+        return failed[priority.ordinal()];
+    }
+
+    /**
+     * @param priority the priority to check
+     * @return the average time requests of the priority waited before being handed to JDA, in milliseconds
+     */
+    public synchronized double getAverageWaitMillis(Priority priority) {
+        long started = submitted[priority.ordinal()] - queued[priority.ordinal()];
+        return started == 0 ? 0 : totalWaitNanos[priority.ordinal()] / 1e6 / started;
+    }
+
+    private final class Task<T> {
+        private final Priority priority;
+        private final String route;
+        private final RestAction<T> action;
+        private final long queuedAt;
+        private final CompletableFuture<T> result;
+
+        Task(Priority priority, String route, RestAction<T> action) {
+            this.priority = priority;
+            this.route = route;
+            this.action = action;
+            this.queuedAt = System.nanoTime();
+            this.result = new CompletableFuture<>();
+        }
+
+        /**
+         * Hands the request to JDA.
+         *
+         * @return true if the request is in flight, false if it already completed
+         */
+        boolean start() {
+            CompletableFuture<T> request;
+            try {
+                request = action.submit();
+            } catch (RuntimeException e) {
+                complete(null, e, false);
+                return false;
+            }
+
+            if (request.isDone()) {
+                // let the caller start the next requests, rather than starting them from here
+                request.whenComplete((T value, Throwable t) -> complete(value, t, false));
+                return false;
+            }
+            request.whenComplete((T value, Throwable t) -> complete(value, t, true));
+            return true;
+        }
+
+        private void complete(T value, Throwable t, boolean drain) {
+            release(this, t == null);
+            if (drain && priority != Priority.INTERACTIVE) {
+                drain();
+            }
+
+            if (t == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.ekkongames.jdacbl.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads on JDKs that have them (Java 21 and later). The library is built for
+ * Java 8, so they are looked up by reflection.
+ * <p>
+ * Virtual threads are used when the {@value #PROPERTY} system property is true, or when asked for
+ * explicitly. A virtual thread blocked on a call such as {@code RestAction.complete()} doesn't hold
+ * on to a platform thread, so thousands of them can wait at once.
+ */
+public final class VirtualThreads {
+
+    private static final String TAG = "VirtualThreads";
+
+    /**
+     * The system property that turns on virtual threads, e.g. {@code -Djdacbl.virtualThreads=true}.
+     */
+    public static final String PROPERTY = "jdacbl.virtualThreads";
+
+    private static final Method OF_VIRTUAL = findMethod("java.lang.Thread", "ofVirtual");
+    private static final Method NAME = findMethod("java.lang.Thread$Builder", "name", String.class, long.class);
+    private static final Method FACTORY = findMethod("java.lang.Thread$Builder", "factory");
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR =
+            findMethod("java.util.concurrent.Executors", "newThreadPerTaskExecutor", ThreadFactory.class);
+
+    private VirtualThreads() {
+    }
+
+    private static Method findMethod(String className, String name, Class<?>... parameterTypes) {
+        try {
+            return Class.forName(className).getMethod(name, parameterTypes);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return whether this JDK can create virtual threads
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null && NAME != null && FACTORY != null && NEW_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * @return whether virtual threads were turned on with the {@value #PROPERTY} system property
+     */
+    public static boolean isRequested() {
+        return Boolean.getBoolean(PROPERTY);
+    }
+
+    /**
+     * @param prefix the prefix of the thread names, followed by a number
+     * @return a factory for virtual threads, or null if they aren't supported
+     */
+    public static ThreadFactory newThreadFactory(String prefix) {
+        if (!isSupported()) {
+            return null;
+        }
+
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = NAME.invoke(builder, prefix, 1L);
+            return (ThreadFactory) FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            Log.w(TAG, "Failed to create a virtual thread factory", e);
+            return null;
+        }
+    }
+
+    /**
+     * Creates an executor that runs each task on a new virtual thread.
+     *
+     * @param prefix the prefix of the thread names, followed by a number
+     * @return the executor, or null if virtual threads aren't supported
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String prefix) {
+        ThreadFactory factory = newThreadFactory(prefix);
+        if (factory == null) {
+            return null;
+        }
+
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            Log.w(TAG, "Failed to create a virtual thread executor", e);
+            return null;
+        }
+    }
+}
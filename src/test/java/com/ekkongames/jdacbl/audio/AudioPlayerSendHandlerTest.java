@@ -0,0 +1,159 @@
+package com.ekkongames.jdacbl.audio;
+
+import com.sedmelluq.discord.lavaplayer.filter.PcmFilterFactory;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
+import com.sedmelluq.discord.lavaplayer.player.event.AudioEventListener;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.AudioFrame;
+import com.sedmelluq.discord.lavaplayer.track.playback.MutableAudioFrame;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that sending audio reuses one buffer rather than allocating for every frame.
+ */
+public class AudioPlayerSendHandlerTest {
+
+    private static final byte[] OPUS_FRAME = new byte[160];
+
+    /**
+     * A player that always has a frame to give, unless it is paused or told to have none.
+     */
+    private static final class FakePlayer implements AudioPlayer {
+        private boolean paused;
+        private boolean empty;
+
+        public AudioTrack getPlayingTrack() {
+            return null;
+        }
+
+        public void playTrack(AudioTrack track) {
+        }
+
+        public boolean startTrack(AudioTrack track, boolean noInterrupt) {
+            return true;
+        }
+
+        public void stopTrack() {
+        }
+
+        public int getVolume() {
+            return 100;
+        }
+
+        public void setVolume(int volume) {
+        }
+
+        public void setFilterFactory(PcmFilterFactory factory) {
+        }
+
+        public void setFrameBufferDuration(Integer duration) {
+        }
+
+        public boolean isPaused() {
+            return paused;
+        }
+
+        public void setPaused(boolean value) {
+            paused = value;
+        }
+
+        public void destroy() {
+        }
+
+        public void addListener(AudioEventListener listener) {
+        }
+
+        public void removeListener(AudioEventListener listener) {
+        }
+
+        public void checkCleanup(long threshold) {
+        }
+
+        public AudioFrame provide() {
+            return null;
+        }
+
+        public AudioFrame provide(long timeout, TimeUnit unit) {
+            return null;
+        }
+
+        public boolean provide(MutableAudioFrame targetFrame) {
+            if (paused || empty) {
+                return false;
+            }
+            targetFrame.store(OPUS_FRAME, 0, OPUS_FRAME.length);
+            return true;
+        }
+
+        public boolean provide(MutableAudioFrame targetFrame, long timeout, TimeUnit unit) {
+            return provide(targetFrame);
+        }
+    }
+
+    private static AudioPlayerSendHandler handler(FakePlayer player) {
+        return new AudioPlayerSendHandler(new MusicScheduler(player, new FakePlayer(), null));
+    }
+
+    @Test
+    public void sendsFramesFromTheSameBuffer() {
+        FakePlayer player = new FakePlayer();
+        AudioPlayerSendHandler handler = handler(player);
+
+        assertTrue(handler.canProvide());
+        ByteBuffer first = handler.provide20MsAudio();
+        assertNotNull(first);
+        assertEquals(OPUS_FRAME.length, first.remaining());
+
+        ByteBuffer second = handler.provide20MsAudio();
+        assertTrue(first == second);
+        assertEquals(OPUS_FRAME.length, second.remaining());
+
+        player.empty = true;
+        assertNull(handler.provide20MsAudio());
+    }
+
+    @Test
+    public void sendingDoesNotAllocate() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+
+        AudioPlayerSendHandler handler = handler(new FakePlayer());
+        long thread = Thread.currentThread().getId();
+
+        // warm up, so the measured frames run compiled code
+        int frames = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (handler.canProvide() && handler.provide20MsAudio() != null) {
+                frames++;
+            }
+        }
+
+        // reading the counter can allocate a little itself, so measure that too
+        long before = allocations.getThreadAllocatedBytes(thread);
+        long overhead = allocations.getThreadAllocatedBytes(thread) - before;
+
+        before = allocations.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 100_000; i++) {
+            if (handler.canProvide() && handler.provide20MsAudio() != null) {
+                frames++;
+            }
+        }
+        long allocated = allocations.getThreadAllocatedBytes(thread) - before - overhead;
+
+        assertEquals(200_000, frames);
+        assertTrue("allocated " + allocated + " bytes for 100000 frames", allocated < 1024);
+    }
+}
@@ -0,0 +1,59 @@
+package com.ekkongames.jdacbl.audio;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that a failing task doesn't stop the executor, and that callers see what a task threw.
+ */
+public class SerialExecutorTest {
+
+    @Test
+    public void keepsRunningAfterATaskThrows() throws InterruptedException {
+        SerialExecutor executor = new SerialExecutor();
+        CountDownLatch ran = new CountDownLatch(2);
+
+        executor.execute(() -> {
+            throw new AssertionError("task failed");
+        });
+        executor.execute(ran::countDown);
+        executor.execute(() -> {
+            throw new IllegalStateException("task failed");
+        });
+        executor.execute(ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+
+        // the executor isn't stuck thinking a task is still running
+        assertEquals(Integer.valueOf(1), executor.call(() -> 1));
+    }
+
+    @Test
+    public void callRethrowsWhatTheTaskThrew() {
+        SerialExecutor executor = new SerialExecutor();
+        IllegalStateException exception = new IllegalStateException("task failed");
+        try {
+            executor.call(() -> {
+                throw exception;
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e == exception);
+        }
+
+        AssertionError error = new AssertionError("task failed");
+        try {
+            executor.call(() -> {
+                throw error;
+            });
+            fail();
+        } catch (AssertionError e) {
+            assertTrue(e == error);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.ekkongames.jdacbl.audio;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks what the cache remembers, for how long, and that every load gets its own copy.
+ */
+public class TrackCacheTest {
+
+    private final AtomicLong time = new AtomicLong();
+
+    // the loads the manager was asked for and hasn't finished, by identifier
+    private final Map<String, AudioLoadResultHandler> loads = new HashMap<>();
+    private int loadCount;
+
+    // the track each copy was made from
+    private final Map<AudioTrack, AudioTrack> copiedFrom = new HashMap<>();
+
+    private final AudioPlayerManager manager = (AudioPlayerManager) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[]{AudioPlayerManager.class}, (proxy, method, args) -> {
+                if (method.getName().equals("loadItem")) {
+                    loadCount++;
+                    loads.put((String) args[0], (AudioLoadResultHandler) args[1]);
+                }
+                return null;
+            });
+
+    private AudioTrack track(String name) {
+        AudioTrack[] track = new AudioTrack[1];
+        track[0] = (AudioTrack) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{AudioTrack.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "makeClone": {
+                            AudioTrack copy = track(name);
+                            copiedFrom.put(copy, track[0]);
+                            return copy;
+                        }
+                        case "toString":
+                            return name;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+        return track[0];
+    }
+
+    // the track every copy was made from, however many times it was copied
+    private AudioTrack original(AudioTrack track) {
+        while (copiedFrom.containsKey(track)) {
+            track = copiedFrom.get(track);
+        }
+        return track;
+    }
+
+    /**
+     * Records what a load was given.
+     */
+    private static final class Result implements AudioLoadResultHandler {
+        private final List<Object> items = new ArrayList<>();
+
+        public void trackLoaded(AudioTrack track) {
+            items.add(track);
+        }
+
+        public void playlistLoaded(AudioPlaylist playlist) {
+            items.add(playlist);
+        }
+
+        public void noMatches() {
+            items.add("no matches");
+        }
+
+        public void loadFailed(FriendlyException exception) {
+            items.add(exception);
+        }
+    }
+
+    private Result load(TrackCache cache, String identifier) {
+        Result result = new Result();
+        cache.loadItem(identifier, result);
+        return result;
+    }
+
+    @Test
+    public void hitsGetTheirOwnCopy() {
+        TrackCache cache = new TrackCache(manager, 10, time::get);
+        AudioTrack track = track("song");
+
+        Result first = load(cache, "song");
+        loads.remove("song").trackLoaded(track);
+        assertEquals(Arrays.asList(track), first.items);
+
+        Result second = load(cache, "song");
+        Result third = load(cache, "song");
+        assertEquals(1, loadCount);
+        AudioTrack secondTrack = (AudioTrack) second.items.get(0);
+        AudioTrack thirdTrack = (AudioTrack) third.items.get(0);
+
+        // every load gets a different copy of the same track
+        assertTrue(secondTrack != track && thirdTrack != track && secondTrack != thirdTrack);
+        assertTrue(original(secondTrack) == track);
+        assertTrue(original(thirdTrack) == track);
+
+        assertEquals(1, cache.getSize());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2.0 / 3, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void playlistsAreCopied() {
+        TrackCache cache = new TrackCache(manager, 10, time::get);
+        AudioTrack a = track("a");
+        AudioTrack b = track("b");
+        AudioPlaylist playlist = new BasicAudioPlaylist("list", Arrays.asList(a, b), b, false);
+
+        load(cache, "list");
+        loads.remove("list").playlistLoaded(playlist);
+
+        AudioPlaylist copy = (AudioPlaylist) load(cache, "list").items.get(0);
+        assertTrue(copy != playlist);
+        assertEquals("list", copy.getName());
+        assertEquals(2, copy.getTracks().size());
+        assertTrue(original(copy.getTracks().get(0)) == a && copy.getTracks().get(0) != a);
+        assertTrue(original(copy.getTracks().get(1)) == b && copy.getTracks().get(1) != b);
+        assertTrue(copy.getSelectedTrack() == copy.getTracks().get(1));
+    }
+
+    @Test
+    public void expiresAfterAnHour() {
+        TrackCache cache = new TrackCache(manager, 10, time::get);
+
+        load(cache, "song");
+        loads.remove("song").trackLoaded(track("song"));
+
+        time.set(TimeUnit.HOURS.toNanos(1) - 1);
+        load(cache, "song");
+        assertEquals(1, loadCount);
+
+        time.set(TimeUnit.HOURS.toNanos(1));
+        load(cache, "song");
+        assertEquals(2, loadCount);
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        TrackCache cache = new TrackCache(manager, 2, time::get);
+        for (String identifier : Arrays.asList("a", "b")) {
+            load(cache, identifier);
+            loads.remove(identifier).trackLoaded(track(identifier));
+        }
+
+        // using a makes b the least recently used
+        load(cache, "a");
+        load(cache, "c");
+        loads.remove("c").trackLoaded(track("c"));
+        assertEquals(2, cache.getSize());
+        assertEquals(3, loadCount);
+
+        load(cache, "a");
+        load(cache, "c");
+        assertEquals(3, loadCount);
+        load(cache, "b");
+        assertEquals(4, loadCount);
+    }
+
+    @Test
+    public void failuresAreNotRemembered() {
+        TrackCache cache = new TrackCache(manager, 10, time::get);
+
+        Result first = load(cache, "missing");
+        loads.remove("missing").noMatches();
+        assertEquals(Arrays.asList("no matches"), first.items);
+
+        FriendlyException exception = new FriendlyException("failed", FriendlyException.Severity.COMMON, null);
+        Result second = load(cache, "missing");
+        loads.remove("missing").loadFailed(exception);
+        assertEquals(Arrays.asList(exception), second.items);
+
+        assertEquals(2, loadCount);
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void concurrentLoadsShareOneLoad() {
+        TrackCache cache = new TrackCache(manager, 10, time::get);
+        AudioTrack track = track("song");
+
+        // nothing is remembered yet, but the song is already being loaded
+        Result first = load(cache, "song");
+        Result second = load(cache, "song");
+        Result third = load(cache, "song");
+        assertEquals(1, loadCount);
+        assertTrue(second.items.isEmpty());
+
+        loads.remove("song").trackLoaded(track);
+        assertEquals(Arrays.asList(track), first.items);
+        AudioTrack secondTrack = (AudioTrack) second.items.get(0);
+        AudioTrack thirdTrack = (AudioTrack) third.items.get(0);
+        assertTrue(secondTrack != track && thirdTrack != track && secondTrack != thirdTrack);
+        assertTrue(original(secondTrack) == track && original(thirdTrack) == track);
+
+        assertEquals(2, cache.getCoalescedCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2.0 / 3, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void concurrentLoadsShareFailures() {
+        TrackCache cache = new TrackCache(manager, 10, time::get);
+
+        Result first = load(cache, "missing");
+        Result second = load(cache, "missing");
+        loads.remove("missing").noMatches();
+        assertEquals(Arrays.asList("no matches"), first.items);
+        assertEquals(Arrays.asList("no matches"), second.items);
+
+        // the failed load is over, so the next one asks the source again
+        load(cache, "missing");
+        assertEquals(2, loadCount);
+        assertFalse(loads.isEmpty());
+    }
+}
@@ -0,0 +1,146 @@
+package com.ekkongames.jdacbl.audio;
+
+import com.sedmelluq.discord.lavaplayer.tools.Units;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the queue behaves exactly like a list of its entries, with the total duration of
+ * the entries it holds.
+ */
+public class TrackQueueTest {
+
+    // the duration each entry was created with, counting streams as 0
+    private final Map<TrackQueue.Entry, Long> durations = new HashMap<>();
+
+    private TrackQueue.Entry entry(Random random) {
+        // a few entries are streams, whose duration is unknown
+        long duration = random.nextInt(10) == 0 ? Units.DURATION_MS_UNKNOWN : random.nextInt(600_000);
+        TrackQueue.Entry entry = new TrackQueue.Entry(new byte[0], null, duration);
+        durations.put(entry, duration == Units.DURATION_MS_UNKNOWN ? 0 : duration);
+        return entry;
+    }
+
+    private long duration(List<TrackQueue.Entry> entries) {
+        long total = 0;
+        for (TrackQueue.Entry entry : entries) {
+            total += durations.get(entry);
+        }
+        return total;
+    }
+
+    private void check(List<TrackQueue.Entry> expected, TrackQueue queue) {
+        assertEquals(expected.size(), queue.size());
+        assertEquals(duration(expected), queue.getDuration());
+        assertEquals(expected, queue.get(0, queue.size()));
+    }
+
+    @Test
+    public void emptyQueue() {
+        TrackQueue queue = new TrackQueue();
+        check(new ArrayList<>(), queue);
+        assertEquals(Collections.emptyList(), queue.get(0, 10));
+        assertEquals(Collections.emptyList(), queue.get(5, 10));
+    }
+
+    @Test
+    public void outOfRange() {
+        Random random = new Random(1);
+        TrackQueue queue = new TrackQueue();
+        queue.add(entry(random));
+
+        int[] indices = {-1, 1};
+        for (int index : indices) {
+            try {
+                queue.get(index);
+                fail("get(" + index + ")");
+            } catch (IndexOutOfBoundsException ignored) {
+            }
+            try {
+                queue.remove(index);
+                fail("remove(" + index + ")");
+            } catch (IndexOutOfBoundsException ignored) {
+            }
+        }
+        try {
+            queue.add(2, entry(random));
+            fail("add(2)");
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void randomOperations() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            TrackQueue queue = new TrackQueue();
+            List<TrackQueue.Entry> expected = new ArrayList<>();
+
+            for (int step = 0; step < 300; step++) {
+                int size = expected.size();
+                int operation = random.nextInt(10);
+                if (operation < 4 || size == 0) {
+                    TrackQueue.Entry entry = entry(random);
+                    if (random.nextBoolean()) {
+                        queue.add(entry);
+                        expected.add(entry);
+                    } else {
+                        int index = random.nextInt(size + 1);
+                        queue.add(index, entry);
+                        expected.add(index, entry);
+                    }
+                } else if (operation < 6) {
+                    int index = random.nextInt(size);
+                    assertEquals(expected.remove(index), queue.remove(index));
+                } else if (operation < 7) {
+                    int from = random.nextInt(size);
+                    int to = random.nextInt(size);
+                    queue.move(from, to);
+                    expected.add(to, expected.remove(from));
+                } else if (operation < 8) {
+                    // ranges may run past the end of the queue
+                    int from = random.nextInt(size + 2);
+                    int count = random.nextInt(size + 2);
+                    List<TrackQueue.Entry> range = expected.subList(Math.min(from, size), Math.min(from + count, size));
+                    assertEquals(range, queue.get(from, count));
+                } else if (operation < 9) {
+                    int modulus = 2 + random.nextInt(4);
+                    List<TrackQueue.Entry> kept = new ArrayList<>();
+                    for (TrackQueue.Entry entry : expected) {
+                        if (durations.get(entry) % modulus != 0) {
+                            kept.add(entry);
+                        }
+                    }
+                    assertEquals(size - kept.size(), queue.retain((TrackQueue.Entry entry) -> durations.get(entry) % modulus != 0));
+                    expected = kept;
+                } else {
+                    long seed = random.nextLong();
+                    queue.shuffle(new Random(seed));
+                    Collections.shuffle(expected, new Random(seed));
+                }
+
+                assertEquals(expected.size(), queue.size());
+                assertEquals(duration(expected), queue.getDuration());
+                if (!expected.isEmpty()) {
+                    int index = random.nextInt(expected.size());
+                    assertTrue(expected.get(index) == queue.get(index));
+                }
+            }
+            check(expected, queue);
+
+            queue.clear();
+            check(new ArrayList<>(), queue);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.ekkongames.jdacbl.commands;
+
+import com.ekkongames.jdacbl.utils.RestScheduler;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the index of command names finds the same commands, in the same order, as the
+ * linear scan CommandGroup used to dispatch with, whether it was computed when the group was built
+ * or taken from a {@link CommandTable}. How long lookups take is measured by
+ * {@code CommandDispatchBenchmark} in the jmh source set.
+ */
+public class CommandDispatchTest {
+
+    private static final class RecordingCommand extends Command {
+        private final List<Command> ran;
+
+        RecordingCommand(List<Command> ran, String... names) {
+            super(new CommandInfo.Builder().names(names).build());
+            this.ran = ran;
+        }
+
+        @Override
+        public void exec(CommandInput input) {
+            ran.add(this);
+        }
+    }
+
+    // the commands the old dispatch loop would run for a name, in order
+    private static final class PriorityCommand extends Command {
+        private RestScheduler.Priority priority;
+
+        PriorityCommand(CommandInfo info) {
+            super(info);
+        }
+
+        @Override
+        public void exec(CommandInput input) {
+            priority = input.getContext().getRestPriority();
+        }
+    }
+
+    private static List<Command> linearScan(List<Command> commands, String token) {
+        List<Command> found = new ArrayList<>();
+        for (Command command : commands) {
+            for (String name : command.getCommandInfo().getNames()) {
+                if (name.isEmpty() || name.equals(token)) {
+                    found.add(command);
+                }
+            }
+        }
+        return found;
+    }
+
+    private static List<Command> lookup(CommandGroup group, String token) {
+        List<Command> found = new ArrayList<>();
+        for (CommandTree.Node node : group.getCommandTree().getRoot().lookup(token)) {
+            found.add(node.getCommand());
+        }
+        return found;
+    }
+
+    private static List<Command> randomCommands(Random random, List<Command> ran, int count, int names) {
+        List<Command> commands = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // some commands have aliases, and a few are catch-all commands
+            String[] aliases = new String[1 + random.nextInt(3)];
+            for (int j = 0; j < aliases.length; j++) {
+                aliases[j] = random.nextInt(40) == 0 ? "" : "c" + random.nextInt(names);
+            }
+            commands.add(new RecordingCommand(ran, aliases));
+        }
+        return commands;
+    }
+
+    private static CommandGroup build(List<Command> commands) {
+        CommandGroup.Builder builder = new CommandGroup.Builder().disableHelp().setSilent(true);
+        for (Command command : commands) {
+            builder.add(command);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void lookupMatchesLinearScan() {
+        Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            List<Command> commands = randomCommands(random, new ArrayList<>(), 1 + random.nextInt(200), 150);
+            CommandGroup group = build(commands);
+
+            for (int name = 0; name < 160; name++) {
+                String token = "c" + name;
+                assertEquals(token, linearScan(commands, token), lookup(group, token));
+            }
+            assertEquals(linearScan(commands, ""), lookup(group, ""));
+        }
+    }
+
+    @Test
+    public void execRunsSameCommandsAsLinearScan() {
+        Random random = new Random(11);
+        List<Command> ran = new ArrayList<>();
+        List<Command> commands = randomCommands(random, ran, 300, 100);
+        CommandGroup group = build(commands);
+
+        for (int name = 0; name < 110; name++) {
+            String token = "c" + name;
+            ran.clear();
+            boolean handled = group.exec(token + " some arguments", Collections.emptyList(), null, true);
+
+            List<Command> expected = linearScan(commands, token);
+            assertEquals(token, expected, ran);
+            assertEquals(token, !expected.isEmpty(), handled);
+        }
+    }
+
+    // the table the annotation processor would generate for the commands
+    private static CommandTable table(List<Command> commands) {
+        Map<String, List<Integer>> index = new LinkedHashMap<>();
+        List<Integer> catchAll = new ArrayList<>();
+        for (int i = 0; i < commands.size(); i++) {
+            for (String name : commands.get(i).getCommandInfo().getNames()) {
+                if (name.isEmpty()) {
+                    catchAll.add(i);
+                    for (List<Integer> handlers : index.values()) {
+                        handlers.add(i);
+                    }
+                } else {
+                    index.computeIfAbsent(name, (String n) -> new ArrayList<>(catchAll)).add(i);
+                }
+            }
+        }
+
+        List<Integer> helpOrder = new ArrayList<>();
+        for (int i = 0; i < commands.size(); i++) {
+            if (commands.get(i).getCommandInfo().isVisible()) {
+                helpOrder.add(i);
+            }
+        }
+        helpOrder.sort(Comparator.comparing((Integer i) -> commands.get(i).getCommandInfo().getAuthenticationRole())
+                .thenComparing((Integer i) -> commands.get(i).toString()));
+
+        int[][] handlers = new int[index.size()][];
+        int i = 0;
+        for (List<Integer> positions : index.values()) {
+            handlers[i++] = toArray(positions);
+        }
+        return new CommandTable(commands.toArray(new Command[0]), index.keySet().toArray(new String[0]),
+                handlers, toArray(catchAll), toArray(helpOrder));
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    @Test
+    public void tableWithMoreCommandsMatchesLinearScan() {
+        Random random = new Random(13);
+        for (int round = 0; round < 50; round++) {
+            List<Command> tableCommands = randomCommands(random, new ArrayList<>(), 1 + random.nextInt(100), 80);
+            List<Command> extraCommands = randomCommands(random, new ArrayList<>(), random.nextInt(10), 90);
+
+            CommandGroup.Builder builder = new CommandGroup.Builder().setSilent(true).add(table(tableCommands));
+            for (Command command : extraCommands) {
+                builder.add(command);
+            }
+            CommandGroup group = builder.build();
+
+            // the same commands, indexed and sorted when the group is built
+            List<Command> commands = new ArrayList<>(tableCommands);
+            commands.addAll(extraCommands);
+            commands.add(group.getCommandTree().find("help").getCommand());
+            CommandGroup.Builder plainBuilder = new CommandGroup.Builder().disableHelp().setSilent(true);
+            for (Command command : commands) {
+                plainBuilder.add(command);
+            }
+            CommandGroup plain = plainBuilder.build();
+
+            for (int name = 0; name < 100; name++) {
+                String token = "c" + name;
+                assertEquals(token, linearScan(commands, token), lookup(group, token));
+            }
+            assertEquals(linearScan(commands, "help"), lookup(group, "help"));
+            assertEquals(plain.getVisibleCommands(), group.getVisibleCommands());
+        }
+    }
+
+    @Test
+    public void runsCommandsWithTheirRestPriority() {
+        PriorityCommand bulk = new PriorityCommand(new CommandInfo.Builder().names("bulk")
+                .restPriority(RestScheduler.Priority.BULK).build());
+        PriorityCommand background = new PriorityCommand(new CommandInfo.Builder().names("background").build());
+        CommandGroup group = build(Arrays.asList(bulk, background));
+
+        group.exec("bulk", Collections.emptyList(), null, true);
+        assertEquals(RestScheduler.Priority.BULK, bulk.priority);
+        group.exec("background", Collections.emptyList(), null, true);
+        assertEquals(RestScheduler.Priority.BACKGROUND, background.priority);
+    }
+}
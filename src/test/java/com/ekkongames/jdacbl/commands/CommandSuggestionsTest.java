@@ -0,0 +1,122 @@
+package com.ekkongames.jdacbl.commands;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that suggestions are as close as the closest name found by comparing against every name.
+ */
+public class CommandSuggestionsTest {
+
+    // few letters, in both cases, so names are often close to each other
+    private static final char[] ALPHABET = {'a', 'b', 'c', 'd', 'A', 'B'};
+
+    // a plain Levenshtein distance, written separately from the one being tested
+    private static int levenshtein(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            d[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            d[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = d[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                d[i][j] = Math.min(substitution, Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    private static int distance(String typed, String name) {
+        return levenshtein(typed.toLowerCase(Locale.ROOT), name.toLowerCase(Locale.ROOT));
+    }
+
+    private static String randomName(Random random) {
+        StringBuilder name = new StringBuilder();
+        int length = 1 + random.nextInt(7);
+        for (int i = 0; i < length; i++) {
+            name.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+        }
+        return name.toString();
+    }
+
+    private static void check(List<String> names, CommandSuggestions suggestions, String typed) {
+        // short names need to be closer: exact up to 2 letters, then 1 away, then 2 away
+        int maxDistance = Math.min(2, Math.max(0, typed.length() - 2));
+        int closest = Integer.MAX_VALUE;
+        for (String name : names) {
+            closest = Math.min(closest, distance(typed, name));
+        }
+
+        String suggestion = suggestions.suggest(typed);
+        if (closest > maxDistance) {
+            assertNull("suggestion for " + typed + " in " + names, suggestion);
+        } else {
+            // several names may be just as close, so any of them will do
+            assertTrue("suggestion for " + typed + " in " + names, names.contains(suggestion));
+            assertEquals("suggestion for " + typed + " in " + names, closest, distance(typed, suggestion));
+        }
+    }
+
+    @Test
+    public void noNames() {
+        assertNull(CommandSuggestions.build(Collections.emptyList()));
+        assertNull(CommandSuggestions.build(Collections.singletonList("")));
+    }
+
+    @Test
+    public void shortNamesNeedToBeCloser() {
+        CommandSuggestions suggestions = CommandSuggestions.build(Arrays.asList("ab", "play", "queue"));
+
+        assertEquals("ab", suggestions.suggest("ab"));
+        assertNull(suggestions.suggest("ax"));
+        assertEquals("play", suggestions.suggest("pla"));
+        assertNull(suggestions.suggest("pl"));
+        assertEquals("play", suggestions.suggest("plya"));
+        assertEquals("queue", suggestions.suggest("qeue"));
+        assertNull(suggestions.suggest("quu"));
+        assertNull(suggestions.suggest("pxxyz"));
+    }
+
+    @Test
+    public void ignoresCase() {
+        CommandSuggestions suggestions = CommandSuggestions.build(Arrays.asList("Play", "SKIP"));
+
+        // the name is suggested as it was registered
+        assertEquals("Play", suggestions.suggest("PLAI"));
+        assertEquals("SKIP", suggestions.suggest("skp"));
+    }
+
+    @Test
+    public void randomNames() {
+        Random random = new Random(9);
+        for (int round = 0; round < 500; round++) {
+            List<String> names = new ArrayList<>();
+            int count = 1 + random.nextInt(60);
+            for (int i = 0; i < count; i++) {
+                names.add(randomName(random));
+            }
+            CommandSuggestions suggestions = CommandSuggestions.build(names);
+
+            for (int i = 0; i < 50; i++) {
+                check(names, suggestions, randomName(random));
+            }
+            // and names close to the registered ones, with their case changed
+            for (String name : names) {
+                check(names, suggestions, name.toUpperCase(Locale.ROOT));
+            }
+        }
+    }
+}
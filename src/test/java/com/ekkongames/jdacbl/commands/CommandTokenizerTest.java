@@ -0,0 +1,116 @@
+package com.ekkongames.jdacbl.commands;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the tokenizer splits messages exactly like the regex it replaced.
+ */
+public class CommandTokenizerTest {
+
+    // the regex CommandGroup used to split messages with, before the tokenizer
+    private static final Pattern PARTS_PATTERN = Pattern.compile("([^\"]\\S*|\".+?\")\\s*");
+
+    // characters the regex treats specially, plus some it doesn't but a tokenizer might; quotes and
+    // spaces are listed twice so they come up more often
+    private static final char[] ALPHABET = {
+            'a', 'b', '!', '\\', '"', '"', ' ', ' ', '\t', '\n', '\r', '\u000B', '\f',
+            '\u0085', '\u00A0', '\u2003', '\u2028', '\u2029', '\u3000', '\uD83D', '\uDE00'
+    };
+
+    private static List<String> expected(String message) {
+        List<String> list = new ArrayList<>();
+        Matcher m = PARTS_PATTERN.matcher(message);
+        while (m.find()) {
+            list.add(m.group(1).replace("\"", ""));
+        }
+        return list;
+    }
+
+    private static List<String> tokenize(String message, int from) {
+        List<String> list = new ArrayList<>();
+        CommandTokenizer tokenizer = new CommandTokenizer(message, from);
+        while (tokenizer.next()) {
+            list.add(CommandTokenizer.getText(message, tokenizer.getTokenStart(), tokenizer.getTokenEnd()));
+        }
+        return list;
+    }
+
+    private static void check(String message) {
+        assertEquals("tokens of [" + message + "]", expected(message), tokenize(message, 0));
+    }
+
+    @Test
+    public void plainWords() {
+        check("");
+        check("play");
+        check("play some song");
+        check("  play   some\tsong  ");
+        check("play\r\nsome\n\nsong");
+    }
+
+    @Test
+    public void quotes() {
+        check("say \"hello world\"");
+        check("say \"hello world\" again");
+        check("say \"\"");
+        check("say \"\"\"");
+        check("say \" \"");
+        check("say \"unterminated");
+        check("say \"");
+        check("say \"multi\nline\"");
+        check("say \"a\"b\"c\"");
+        check("say a\"b c\"d");
+        check("\"\"\"\"");
+        check("\" \"\" \"");
+    }
+
+    @Test
+    public void escapes() {
+        check("say \\\"hello world\\\"");
+        check("say \"hello \\\" world\"");
+        check("say \\ \\\\ \\n");
+        check("\\\"");
+    }
+
+    @Test
+    public void unicodeWhitespace() {
+        check("play\u00A0some\u00A0song");
+        check("play\u2003some\u3000song");
+        check("play\u0085some\u2028song\u2029");
+        check("say \"hello\u2028world\"");
+        check("say \"hello\u0085world\" again");
+        check("say \"hello\u00A0world\"");
+        check("play \uD83D\uDE00 \"\uD83D\uDE00 \uD83D\uDE00\"");
+    }
+
+    @Test
+    public void startsFromOffset() {
+        String message = "!!play \"some song\"";
+        assertEquals(expected(message.substring(2)), tokenize(message, 2));
+    }
+
+    @Test
+    public void randomMessages() {
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            StringBuilder message = new StringBuilder();
+            int length = random.nextInt(24);
+            for (int j = 0; j < length; j++) {
+                message.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+            }
+
+            String text = message.toString();
+            int from = random.nextInt(Math.min(length, 3) + 1);
+            assertEquals("tokens of [" + text + "] from " + from,
+                    expected(text.substring(from)), tokenize(text, from));
+        }
+    }
+}
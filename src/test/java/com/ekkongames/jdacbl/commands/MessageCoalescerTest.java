@@ -0,0 +1,107 @@
+package com.ekkongames.jdacbl.commands;
+
+import net.dv8tion.jda.api.entities.MessageChannel;
+import net.dv8tion.jda.api.requests.restaction.MessageAction;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that replies are merged, and that channels are forgotten once their replies are sent.
+ */
+public class MessageCoalescerTest {
+
+    private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+
+    private MessageChannel channel(long id) {
+        MessageAction action = (MessageAction) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{MessageAction.class},
+                (proxy, method, args) -> method.getName().equals("submit") ? new CompletableFuture<>() : null);
+        return (MessageChannel) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{MessageChannel.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getIdLong":
+                            return id;
+                        case "getId":
+                            return Long.toString(id);
+                        case "sendMessage":
+                            sent.add(args[0].toString());
+                            return action;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    @Test
+    public void forgetsChannelsOnceFlushed() {
+        MessageCoalescer.clear();
+        MessageChannel first = channel(1);
+        MessageChannel second = channel(2);
+
+        MessageCoalescer.send(first, "a");
+        MessageCoalescer.send(first, "b");
+        MessageCoalescer.send(second, "c");
+        assertEquals(2, MessageCoalescer.size());
+
+        MessageCoalescer.flush(first);
+        assertEquals(Collections.singletonList("a\nb"), sent);
+        assertEquals(1, MessageCoalescer.size());
+
+        // replying again after a flush uses a new buffer
+        MessageCoalescer.send(first, "d");
+        MessageCoalescer.flush(first);
+        MessageCoalescer.flush(second);
+        assertEquals(Arrays.asList("a\nb", "d", "c"), sent);
+        assertEquals(0, MessageCoalescer.size());
+    }
+
+    @Test
+    public void clearSendsWaitingReplies() {
+        MessageCoalescer.clear();
+        for (long id = 0; id < 100; id++) {
+            MessageCoalescer.send(channel(id), "reply");
+        }
+        assertEquals(100, MessageCoalescer.size());
+
+        MessageCoalescer.clear();
+        assertEquals(100, sent.size());
+        assertEquals(0, MessageCoalescer.size());
+    }
+
+    @Test
+    public void keepsOrderWhenFlushedWhileSending() throws InterruptedException {
+        MessageCoalescer.clear();
+        MessageChannel channel = channel(3);
+
+        // flushing from another thread removes buffers while replies are being added to them
+        Thread flusher = new Thread(() -> {
+            for (int i = 0; i < 10_000; i++) {
+                MessageCoalescer.flush(channel);
+            }
+        });
+        flusher.start();
+        for (int i = 0; i < 10_000; i++) {
+            MessageCoalescer.send(channel, Integer.toString(i));
+        }
+        flusher.join();
+        MessageCoalescer.flush(channel);
+
+        List<String> replies = new ArrayList<>();
+        for (String message : sent) {
+            replies.addAll(Arrays.asList(message.split("\n")));
+        }
+        assertEquals(10_000, replies.size());
+        for (int i = 0; i < replies.size(); i++) {
+            assertEquals(Integer.toString(i), replies.get(i));
+        }
+        assertEquals(0, MessageCoalescer.size());
+    }
+}
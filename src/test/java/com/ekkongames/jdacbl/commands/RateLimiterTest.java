@@ -0,0 +1,165 @@
+package com.ekkongames.jdacbl.commands;
+
+import net.dv8tion.jda.api.entities.MessageChannel;
+import net.dv8tion.jda.api.entities.User;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks the uses each kind of limit allows, against a clock the test controls.
+ */
+public class RateLimiterTest {
+
+    private final AtomicLong time = new AtomicLong(1000);
+
+    private static <T> T entity(Class<T> type, long id) {
+        return type.cast(Proxy.newProxyInstance(RateLimiterTest.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> method.getName().equals("getIdLong") ? id : null));
+    }
+
+    private static CommandContext context(long user, long channel) {
+        return new CommandContext(null, entity(User.class, user), entity(MessageChannel.class, channel));
+    }
+
+    private RateLimiter limiter(RateLimit... rateLimits) {
+        CommandInfo.Builder builder = new CommandInfo.Builder().names("command");
+        for (RateLimit rateLimit : rateLimits) {
+            builder.rateLimit(rateLimit);
+        }
+        return RateLimiter.compile(builder.build(), time::get);
+    }
+
+    private long at(long millis, RateLimiter limiter, CommandContext context) {
+        time.set(millis);
+        return limiter.tryAcquire(context);
+    }
+
+    @Test
+    public void noLimits() {
+        assertNull(RateLimiter.compile(new CommandInfo.Builder().names("command").build()));
+    }
+
+    @Test
+    public void tokenBucketBurstAndRefill() {
+        RateLimiter limiter = limiter(RateLimit.tokenBucket(RateLimit.Scope.USER, 3, 100, TimeUnit.MILLISECONDS));
+        CommandContext context = context(1, 1);
+
+        // the whole burst is allowed at once, then one use per interval
+        assertEquals(0, at(1000, limiter, context));
+        assertEquals(0, at(1000, limiter, context));
+        assertEquals(0, at(1000, limiter, context));
+        assertEquals(100, at(1000, limiter, context));
+        assertEquals(-50, at(1050, limiter, context));
+        assertEquals(0, at(1100, limiter, context));
+        assertEquals(100, at(1100, limiter, context));
+
+        // once enough time passes the whole burst is allowed again, but no more
+        assertEquals(0, at(1700, limiter, context));
+        assertEquals(0, at(1700, limiter, context));
+        assertEquals(0, at(1700, limiter, context));
+        assertEquals(100, at(1700, limiter, context));
+
+        // and a long wait doesn't let the bucket hold more than the burst
+        assertEquals(0, at(100_000, limiter, context));
+        assertEquals(0, at(100_000, limiter, context));
+        assertEquals(0, at(100_000, limiter, context));
+        assertEquals(100, at(100_000, limiter, context));
+    }
+
+    @Test
+    public void cooldownCountsFromLastAllowedUse() {
+        CommandInfo info = new CommandInfo.Builder().names("command")
+                .cooldown(RateLimit.Scope.USER, 200, TimeUnit.MILLISECONDS).build();
+        RateLimiter limiter = RateLimiter.compile(info, time::get);
+        CommandContext context = context(1, 1);
+
+        assertEquals(0, at(1000, limiter, context));
+        assertEquals(150, at(1050, limiter, context));
+        assertEquals(-1, at(1199, limiter, context));
+
+        // rejected uses don't push the cooldown back
+        assertEquals(0, at(1200, limiter, context));
+        assertEquals(1, at(1399, limiter, context));
+        assertEquals(0, at(1400, limiter, context));
+
+        // the cooldown starts when the command was last allowed, however late that was
+        assertEquals(0, at(5000, limiter, context));
+        assertEquals(199, at(5001, limiter, context));
+        assertEquals(0, at(5200, limiter, context));
+    }
+
+    @Test
+    public void fixedWindowResetsEachPeriod() {
+        RateLimiter limiter = limiter(RateLimit.fixedWindow(RateLimit.Scope.USER, 2, 1000, TimeUnit.MILLISECONDS));
+        CommandContext context = context(1, 1);
+
+        assertEquals(0, at(1000, limiter, context));
+        assertEquals(0, at(1500, limiter, context));
+        assertEquals(500, at(1500, limiter, context));
+        assertEquals(-100, at(1900, limiter, context));
+
+        // uses at the end of one window don't count against the next
+        assertEquals(0, at(2000, limiter, context));
+        assertEquals(0, at(2999, limiter, context));
+        assertEquals(1, at(2999, limiter, context));
+        assertEquals(0, at(3000, limiter, context));
+    }
+
+    @Test
+    public void tellsOncePerWait() {
+        RateLimiter limiter = limiter(RateLimit.tokenBucket(RateLimit.Scope.USER, 1, 1000, TimeUnit.MILLISECONDS));
+        CommandContext context = context(1, 1);
+
+        for (int wait = 0; wait < 5; wait++) {
+            long start = 1000 + wait * 1000;
+            assertEquals(0, at(start, limiter, context));
+
+            // only the first rejected use in each wait gets a positive number, and a reply
+            int told = 0;
+            for (long now = start; now < start + 1000; now += 10) {
+                long result = at(now, limiter, context);
+                assertEquals(start + 1000 - now, Math.abs(result));
+                if (result > 0) {
+                    told++;
+                }
+            }
+            assertEquals(1, told);
+        }
+    }
+
+    @Test
+    public void scopes() {
+        RateLimiter perUser = limiter(RateLimit.tokenBucket(RateLimit.Scope.USER, 1, 1000, TimeUnit.MILLISECONDS));
+        assertEquals(0, at(1000, perUser, context(1, 1)));
+        assertEquals(0, at(1000, perUser, context(2, 1)));
+        assertEquals(1000, at(1000, perUser, context(1, 2)));
+
+        RateLimiter perChannel = limiter(RateLimit.tokenBucket(RateLimit.Scope.CHANNEL, 1, 1000, TimeUnit.MILLISECONDS));
+        assertEquals(0, at(1000, perChannel, context(1, 1)));
+        assertEquals(0, at(1000, perChannel, context(1, 2)));
+        assertEquals(1000, at(1000, perChannel, context(2, 1)));
+
+        RateLimiter global = limiter(RateLimit.tokenBucket(RateLimit.Scope.GLOBAL, 1, 1000, TimeUnit.MILLISECONDS));
+        assertEquals(0, at(1000, global, context(1, 1)));
+        assertEquals(1000, at(1000, global, context(2, 2)));
+    }
+
+    @Test
+    public void rejectedUsesStillCountAgainstEarlierLimits() {
+        RateLimiter limiter = limiter(
+                RateLimit.tokenBucket(RateLimit.Scope.USER, 2, 1000, TimeUnit.MILLISECONDS),
+                RateLimit.tokenBucket(RateLimit.Scope.GLOBAL, 1, 1000, TimeUnit.MILLISECONDS));
+
+        assertEquals(0, at(1000, limiter, context(1, 1)));
+        // the global limit rejects this use, but the user's limit already counted it
+        assertEquals(1000, at(1000, limiter, context(1, 1)));
+        assertEquals(0, at(2000, limiter, context(1, 1)));
+        assertEquals(1000, at(2000, limiter, context(1, 1)));
+    }
+}
@@ -0,0 +1,173 @@
+package com.ekkongames.jdacbl.commands.processor;
+
+import com.ekkongames.jdacbl.commands.CommandGroup;
+import com.ekkongames.jdacbl.commands.CommandTable;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compiles annotated commands with the processor, and checks the class it generates.
+ */
+public class BotCommandProcessorTest {
+
+    // two catch-all commands declared around the others, aliases, and a hidden and a restricted command
+    private static final String COMMANDS = String.join("\n",
+            "package test.bot;",
+            "",
+            "import com.ekkongames.jdacbl.commands.*;",
+            "",
+            "public class Commands {",
+            "    public static final java.util.List<String> RAN = new java.util.ArrayList<>();",
+            "",
+            "    static abstract class Recording extends Command {",
+            "        Recording(CommandInfo info) { super(info); }",
+            "        public void exec(CommandInput input) { RAN.add(getClass().getSimpleName()); }",
+            "    }",
+            "",
+            "    @BotCommand(names = {\"zeta\", \"z\"})",
+            "    public static class Zeta extends Recording { public Zeta(CommandInfo info) { super(info); } }",
+            "",
+            "    @BotCommand(names = \"\")",
+            "    public static class Fallback extends Recording { public Fallback(CommandInfo info) { super(info); } }",
+            "",
+            "    @BotCommand(names = {\"alpha\", \"a\"}, auth = \"admin\")",
+            "    public static class Alpha extends Recording { public Alpha(CommandInfo info) { super(info); } }",
+            "",
+            "    @BotCommand(names = \"hidden\", visible = false)",
+            "    public static class Hidden extends Recording { public Hidden(CommandInfo info) { super(info); } }",
+            "",
+            "    @BotCommand(names = \"\")",
+            "    public static class LastFallback extends Recording { public LastFallback(CommandInfo info) { super(info); } }",
+            "}",
+            "");
+
+    private static final class Result {
+        private final boolean success;
+        private final List<Diagnostic<? extends JavaFileObject>> diagnostics;
+        private final Path classes;
+        private final Path sources;
+
+        Result(boolean success, List<Diagnostic<? extends JavaFileObject>> diagnostics, Path classes, Path sources) {
+            this.success = success;
+            this.diagnostics = diagnostics;
+            this.classes = classes;
+            this.sources = sources;
+        }
+    }
+
+    private static Result compile(String source) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assumeTrue(compiler != null);
+
+        Path root = Files.createTempDirectory("processor-test");
+        Path input = root.resolve("test/bot/Commands.java");
+        Path classes = root.resolve("classes");
+        Path sources = root.resolve("generated");
+        Files.createDirectories(input.getParent());
+        Files.createDirectories(classes);
+        Files.createDirectories(sources);
+        Files.write(input, source.getBytes(StandardCharsets.UTF_8));
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics,
+                    Arrays.asList("-classpath", System.getProperty("java.class.path"),
+                            "-d", classes.toString(), "-s", sources.toString()),
+                    null, files.getJavaFileObjects(input.toFile()));
+            task.setProcessors(Collections.singletonList(new BotCommandProcessor()));
+            boolean success = task.call();
+            return new Result(success, diagnostics.getDiagnostics(), classes, sources);
+        }
+    }
+
+    @Test
+    public void generatesTablesInDeclarationOrder() throws IOException {
+        Result result = compile(COMMANDS);
+        assertTrue(result.diagnostics.toString(), result.success);
+
+        String generated = new String(Files.readAllBytes(result.sources.resolve("test/bot/BotCommands.java")),
+                StandardCharsets.UTF_8);
+
+        // commands are created in the order they were declared in, not sorted
+        int zeta = generated.indexOf("new test.bot.Commands.Zeta(");
+        int fallback = generated.indexOf("new test.bot.Commands.Fallback(");
+        int alpha = generated.indexOf("new test.bot.Commands.Alpha(");
+        int hidden = generated.indexOf("new test.bot.Commands.Hidden(");
+        int lastFallback = generated.indexOf("new test.bot.Commands.LastFallback(");
+        assertTrue(generated, 0 < zeta && zeta < fallback && fallback < alpha && alpha < hidden && hidden < lastFallback);
+
+        assertTrue(generated, generated.contains("NAMES = {\"zeta\", \"z\", \"alpha\", \"a\", \"hidden\"};"));
+        assertTrue(generated, generated.contains("HANDLERS = {{0, 1, 4}, {0, 1, 4}, {1, 2, 4}, {1, 2, 4}, {1, 3, 4}};"));
+        assertTrue(generated, generated.contains("CATCH_ALL = {1, 4};"));
+        // by role, then by name; commands with the same role and name stay in declaration order
+        assertTrue(generated, generated.contains("HELP_ORDER = {1, 4, 0, 2};"));
+    }
+
+    @Test
+    public void generatedTableDispatchesInDeclarationOrder() throws Exception {
+        Result result = compile(COMMANDS);
+        assertTrue(result.diagnostics.toString(), result.success);
+
+        URL[] urls = {result.classes.toUri().toURL()};
+        try (URLClassLoader loader = new URLClassLoader(urls, getClass().getClassLoader())) {
+            Class<?> generated = loader.loadClass("test.bot.BotCommands");
+            @SuppressWarnings("unchecked")
+            List<String> ran = (List<String>) loader.loadClass("test.bot.Commands").getField("RAN").get(null);
+
+            CommandTable table = (CommandTable) generated.getMethod("createTable").invoke(null);
+            assertEquals(5, table.size());
+
+            CommandGroup.Builder builder = (CommandGroup.Builder) generated.getMethod("addTo", CommandGroup.Builder.class)
+                    .invoke(null, new CommandGroup.Builder().disableHelp().setSilent(true));
+            CommandGroup group = builder.build();
+
+            group.exec("zeta", Collections.emptyList(), null, true);
+            assertEquals(Arrays.asList("Zeta", "Fallback", "LastFallback"), ran);
+
+            ran.clear();
+            group.exec("hidden", Collections.emptyList(), null, true);
+            assertEquals(Arrays.asList("Fallback", "Hidden", "LastFallback"), ran);
+
+            ran.clear();
+            group.exec("unknown", Collections.emptyList(), null, true);
+            assertEquals(Arrays.asList("Fallback", "LastFallback"), ran);
+        }
+    }
+
+    @Test
+    public void rejectsDuplicateNames() throws IOException {
+        Result result = compile(COMMANDS.replace("names = \"hidden\"", "names = \"zeta\""));
+        assertFalse(result.success);
+
+        boolean reported = false;
+        for (Diagnostic<? extends JavaFileObject> diagnostic : result.diagnostics) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR
+                    && diagnostic.getMessage(null).contains("\"zeta\" is already used")) {
+                reported = true;
+            }
+        }
+        assertTrue(result.diagnostics.toString(), reported);
+        assertFalse(new File(result.sources.toFile(), "test/bot/BotCommands.java").exists());
+    }
+}
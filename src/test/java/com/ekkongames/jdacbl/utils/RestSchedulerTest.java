@@ -0,0 +1,83 @@
+package com.ekkongames.jdacbl.utils;
+
+import net.dv8tion.jda.api.requests.RestAction;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the order in which queued requests are handed to JDA.
+ */
+public class RestSchedulerTest {
+
+    // the names of the requests handed to JDA, in order
+    private final List<String> started = new ArrayList<>();
+
+    @SuppressWarnings("unchecked")
+    private RestAction<Void> action(String name, CompletableFuture<Void> result) {
+        return (RestAction<Void>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{RestAction.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("submit")) {
+                        started.add(name);
+                        return result;
+                    }
+                    return null;
+                });
+    }
+
+    @Test
+    public void bulkRequestsWaitForBackgroundRequests() {
+        RestScheduler scheduler = new RestScheduler(2);
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        CompletableFuture<Void> second = new CompletableFuture<>();
+        scheduler.submit(RestScheduler.Priority.BACKGROUND, "a", action("first", first));
+        scheduler.submit(RestScheduler.Priority.BACKGROUND, "b", action("second", second));
+
+        // every slot is taken, so these wait, even though the bulk request was queued first
+        scheduler.submit(RestScheduler.Priority.BULK, "c", action("bulk", new CompletableFuture<>()));
+        CompletableFuture<Void> background = new CompletableFuture<>();
+        scheduler.submit(RestScheduler.Priority.BACKGROUND, "d", action("background", background));
+        assertEquals(Arrays.asList("first", "second"), started);
+        assertEquals(1, scheduler.getQueueSize(RestScheduler.Priority.BULK));
+        assertEquals(1, scheduler.getQueueSize(RestScheduler.Priority.BACKGROUND));
+
+        first.complete(null);
+        assertEquals(Arrays.asList("first", "second", "background"), started);
+
+        // bulk requests only get half the slots, so it waits for both background requests
+        second.complete(null);
+        assertEquals(Arrays.asList("first", "second", "background"), started);
+        background.complete(null);
+        assertEquals(Arrays.asList("first", "second", "background", "bulk"), started);
+        assertEquals(0, scheduler.getQueueSize(RestScheduler.Priority.BULK));
+    }
+
+    @Test
+    public void bulkRequestsOnlyUseHalfTheSlots() {
+        RestScheduler scheduler = new RestScheduler(4);
+        for (int i = 0; i < 4; i++) {
+            scheduler.submit(RestScheduler.Priority.BULK, "bulk" + i, action("bulk" + i, new CompletableFuture<>()));
+        }
+        assertEquals(Arrays.asList("bulk0", "bulk1"), started);
+
+        // background requests can still use the rest
+        scheduler.submit(RestScheduler.Priority.BACKGROUND, "a", action("background", new CompletableFuture<>()));
+        assertEquals(Arrays.asList("bulk0", "bulk1", "background"), started);
+        assertEquals(3, scheduler.getInFlight());
+    }
+
+    @Test
+    public void interactiveRequestsNeverWait() {
+        RestScheduler scheduler = new RestScheduler(1);
+        scheduler.submit(RestScheduler.Priority.BACKGROUND, "a", action("background", new CompletableFuture<>()));
+        scheduler.submit(RestScheduler.Priority.INTERACTIVE, "a", action("reply", new CompletableFuture<>()));
+        assertEquals(Arrays.asList("background", "reply"), started);
+        assertEquals(1, scheduler.getInFlight());
+    }
+}